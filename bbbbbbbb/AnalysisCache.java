@@ -0,0 +1,131 @@
+package com.tam.compiler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Remembers the analysis of recently seen sources, so running the stages again on
+ * unchanged code costs a hash lookup instead of a full analysis.
+ *
+ * Entries are keyed by the content (a hash of the text plus the analyzer version),
+ * not by file name, so reopening a file or pasting the same code hits as well.
+ * A hit is confirmed with equals() against the stored source, so a hash collision can
+ * never hand back the wrong result. The source costs no extra memory: the cached
+ * TokenBuffer points into it anyway.
+ *
+ * Least recently used entries are dropped once the estimated size passes maxBytes
+ * (-Dcompiler.cacheBytes, default 64MB). Thread-safe.
+ */
+public class AnalysisCache {
+
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("compiler.cacheBytes", 64L * 1024 * 1024);
+
+    private static class Entry {
+        final String source;
+        final CompilerPipeline.Result result;
+        final long bytes;
+
+        Entry(String source, CompilerPipeline.Result result, long bytes) {
+            this.source = source;
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    private final CompilerPipeline pipeline;
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits, misses, evictions;
+
+    public AnalysisCache(CompilerPipeline pipeline) {
+        this(pipeline, DEFAULT_MAX_BYTES);
+    }
+
+    public AnalysisCache(CompilerPipeline pipeline, long maxBytes) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive");
+        this.pipeline = pipeline;
+        this.maxBytes = maxBytes;
+    }
+
+    // The cached Result for code, or a fresh CompilerPipeline.run() that is then cached
+    public CompilerPipeline.Result analyze(String code) {
+        CompilerPipeline.Result result = get(code);
+        if (result == null) {
+            result = pipeline.run(code);
+            put(code, result);
+        }
+        return result;
+    }
+
+    public synchronized CompilerPipeline.Result get(String code) {
+        if (code == null) return null;
+        Entry entry = entries.get(hash(code));
+        if (entry != null && (entry.source == code || entry.source.equals(code))) {
+            hits++;
+            return entry.result;
+        }
+        misses++;
+        return null;
+    }
+
+    // Also used for results computed elsewhere (Run All), so the next click is a hit
+    public synchronized void put(String code, CompilerPipeline.Result result) {
+        if (code == null) return;
+        long size = estimateBytes(code, result);
+        if (size > maxBytes) return;   // would push out everything else
+
+        Entry previous = entries.put(hash(code), new Entry(code, result, size));
+        if (previous != null) bytes -= previous.bytes;
+        bytes += size;
+
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    // === STATISTICS ===
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getBytes() { return bytes; }
+    public long getMaxBytes() { return maxBytes; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AnalysisCache[%d entries, %,d / %,d bytes, %d hits, %d misses, %d evictions]",
+                entries.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+
+    // === KEY ===
+    // String.hashCode() (vectorized by the JIT and cached inside the String) plus the length,
+    // mixed with the analyzer version so results from older rules are never returned.
+    // Collisions are harmless: get() compares the text before answering.
+    private static long hash(String code) {
+        long hash = ((long) code.hashCode() << 32) | (code.length() & 0xffffffffL);
+        return hash ^ (CompilerPipeline.ANALYZER_VERSION * 0x9e3779b97f4a7c15L);
+    }
+
+    // Rough footprint of one entry: the source, 16 bytes per token, and the objects of each stage
+    private static long estimateBytes(String code, CompilerPipeline.Result result) {
+        long size = 64 + 40 + 2L * code.length();
+        size += 64 + 16L * result.lexical.tokens.size() + 96L * result.lexical.diagnostics.size();
+        if (result.syntax != null) size += 64 + 96L * result.syntax.diagnostics.size();
+        if (result.semantic != null) {
+            size += 128 + 48L * result.semantic.symbols.size() + 96L * result.semantic.diagnostics.size();
+        }
+        if (result.program != null) size += 64 + result.program.classBytes;
+        return size;
+    }
+}
@@ -0,0 +1,174 @@
+package com.tam.compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Java Flight Recorder events for everything that can make the app feel slow:
+ * reading a file, each analysis stage and the UI updates that follow.
+ *
+ * Record with: java -XX:StartFlightRecording=filename=compiler.jfr ...
+ * and open the file in JDK Mission Control (or "jfr print --categories 'TAM Compiler'").
+ * When no recording is running, begin()/commit() cost next to nothing.
+ */
+public final class AnalysisEvents {
+
+    private AnalysisEvents() {}
+
+    @Name("com.tam.compiler.FileLoad")
+    @Label("File Load")
+    @Category("TAM Compiler")
+    @Description("Reading a source file from disk")
+    @StackTrace(false)
+    public static class FileLoad extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("File Size")
+        @DataAmount
+        public long fileSize;
+
+        @Label("Characters")
+        public long chars;
+
+        @Label("Lines")
+        public int lineCount;
+    }
+
+    @Name("com.tam.compiler.AnalysisStage")
+    @Label("Analysis Stage")
+    @Category("TAM Compiler")
+    @Description("One run of an analyzer")
+    @StackTrace(false)
+    public static class Stage extends Event {
+        @Label("Stage")
+        public String stage;
+
+        @Label("Characters")
+        public long chars;
+
+        @Label("Lines")
+        public int lineCount;
+
+        @Label("Tokens")
+        public int tokenCount;
+
+        @Label("Errors")
+        public int errorCount;
+
+        @Label("Passed")
+        public boolean success;
+    }
+
+    @Name("com.tam.compiler.UiUpdate")
+    @Label("UI Update")
+    @Category("TAM Compiler")
+    @Description("Pushing text into a JavaFX control")
+    @StackTrace(false)
+    public static class UiUpdate extends Event {
+        @Label("Step")
+        public String step;
+
+        @Label("Characters")
+        public long chars;
+
+        @Label("Lines")
+        public int lineCount;
+    }
+
+    // === HELPERS ===
+    // Fields are only filled in (and lines only counted) if the event is actually going to be recorded.
+
+    static void commitStage(Stage event, String stage, String code, int tokenCount, int errorCount, boolean success) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.stage = stage;
+        event.chars = code == null ? 0 : code.length();
+        event.lineCount = countLines(code);
+        event.tokenCount = tokenCount;
+        event.errorCount = errorCount;
+        event.success = success;
+        event.commit();
+    }
+
+    // For a stage that already knows its counts (one edit of IncrementalAnalyzer)
+    static void commitStage(Stage event, String stage, long chars, int lineCount, int tokenCount, int errorCount,
+                            boolean success) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.stage = stage;
+        event.chars = chars;
+        event.lineCount = lineCount;
+        event.tokenCount = tokenCount;
+        event.errorCount = errorCount;
+        event.success = success;
+        event.commit();
+    }
+
+    // A whole pass of the pipeline, by any of its analyzers: the errors of every stage that ran
+    static void commitPipeline(Stage event, String stage, String code, CompilerPipeline.Result result) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        pipelineFields(event, stage, code == null ? 0 : code.length(), countLines(code), result);
+    }
+
+    // The same for StreamingAnalyzer, which never holds the text
+    static void commitPipeline(Stage event, String stage, long chars, int lineCount, CompilerPipeline.Result result) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        pipelineFields(event, stage, chars, lineCount, result);
+    }
+
+    private static void pipelineFields(Stage event, String stage, long chars, int lineCount, CompilerPipeline.Result result) {
+        event.stage = stage;
+        event.chars = chars;
+        event.lineCount = lineCount;
+        event.tokenCount = result.lexical.tokens.size();
+        event.errorCount = result.lexical.errorCount
+                + (result.syntax == null ? 0 : result.syntax.errorCount)
+                + (result.semantic == null ? 0 : result.semantic.errorCount);
+        event.success = result.isSuccess();
+        event.commit();
+    }
+
+    static void commitFileLoad(FileLoad event, String path, long fileSize, String content) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.path = path;
+        event.fileSize = fileSize;
+        event.chars = content.length();
+        event.lineCount = countLines(content);
+        event.commit();
+    }
+
+    static void commitUiUpdate(UiUpdate event, String step, String text) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.step = step;
+        event.chars = text == null ? 0 : text.length();
+        event.lineCount = countLines(text);
+        event.commit();
+    }
+
+    // For a step that already knows its counts (nothing to scan)
+    static void commitUiUpdate(UiUpdate event, String step, int chars, int lineCount) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.step = step;
+        event.chars = chars;
+        event.lineCount = lineCount;
+        event.commit();
+    }
+
+    private static int countLines(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int lines = 1;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) lines++;
+        return lines;
+    }
+}
@@ -0,0 +1,92 @@
+package com.tam.compiler;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * Runs analyses off the UI thread, one virtual thread per request.
+ *
+ * Only the newest request counts: submitting a new one (or calling cancel()) interrupts
+ * the one still running, and a result that is no longer current is never published.
+ * Results are handed to the UI through uiExecutor (Platform::runLater in the app), and so is
+ * anything the analysis throws, Errors included: a StackOverflowError or OutOfMemoryError on a
+ * huge file, or a LinkageError from CodeGenerator's classes, must not leave the UI "running".
+ *
+ * The old fixed 1.5s "processing" pause is now an opt-in presentation setting:
+ * the running state is shown for at least presentationDelayMillis, counting the
+ * time the analysis itself took.
+ */
+public class AnalysisExecutor implements AutoCloseable {
+
+    // -Dcompiler.presentationDelayMs=1500 brings back the old animation timing
+    public static final long DEFAULT_PRESENTATION_DELAY_MS = Long.getLong("compiler.presentationDelayMs", 0L);
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Executor uiExecutor;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long presentationDelayMillis = DEFAULT_PRESENTATION_DELAY_MS;
+    private Future<?> current;
+
+    public AnalysisExecutor(Executor uiExecutor) {
+        this.uiExecutor = uiExecutor;
+    }
+
+    public <T> void submit(Supplier<T> analysis, Consumer<T> onResult, Consumer<Throwable> onError) {
+        long id;
+        synchronized (this) {
+            id = generation.incrementAndGet();
+            if (current != null) current.cancel(true);
+            current = workers.submit(() -> execute(id, analysis, onResult, onError));
+        }
+    }
+
+    private <T> void execute(long id, Supplier<T> analysis, Consumer<T> onResult, Consumer<Throwable> onError) {
+        long start = System.nanoTime();
+        try {
+            T result = analysis.get();
+
+            long remaining = presentationDelayMillis - (System.nanoTime() - start) / 1_000_000;
+            if (remaining > 0) Thread.sleep(remaining);
+
+            publish(id, () -> onResult.accept(result));
+        } catch (InterruptedException | CancellationException e) {
+            // Superseded by a newer request: nothing to show
+        } catch (Throwable e) {
+            publish(id, () -> onError.accept(e));
+            // The JVM itself is in trouble: tell the UI, but let the thread die of it as well
+            if (e instanceof VirtualMachineError error) throw error;
+        }
+    }
+
+    // Checked twice: here, and again on the UI thread in case a newer request arrived in between
+    private void publish(long id, Runnable update) {
+        if (generation.get() != id) return;
+        uiExecutor.execute(() -> {
+            if (generation.get() == id) update.run();
+        });
+    }
+
+    // Drop whatever is running; its result will never reach the UI
+    public synchronized void cancel() {
+        generation.incrementAndGet();
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    public long getPresentationDelayMillis() { return presentationDelayMillis; }
+    public void setPresentationDelayMillis(long millis) { this.presentationDelayMillis = Math.max(0, millis); }
+
+    @Override
+    public void close() {
+        cancel();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,363 @@
+package com.tam.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * On-disk memory of earlier runs: for every analyzed file, the outcome of each stage,
+ * its diagnostics and a few counts, keyed by path and checked against size, mtime and
+ * a hash of the content. HeadlessMain uses it (--index FILE) to skip unchanged files.
+ *
+ * File layout (big-endian):
+ *   header   int magic 'TAMI', int format version, int analyzer version, int entry count
+ *   entry    int length of the rest of the entry, then
+ *            str path, long size, long mtime, long content hash, byte stage flags,
+ *            int tokens, int symbols, str title, int error count, short diagnostic count,
+ *            diagnostics: byte code, int line, int column, byte arg count, str args...
+ *   str      unsigned short length + UTF-8 bytes
+ *
+ * The file is memory-mapped when opened and only the paths are read; an entry is decoded
+ * when it is looked up. On save, entries that did not change are copied over byte for byte,
+ * entries of files that no longer exist are dropped, and the new file is mapped in place of the
+ * old one. The mapping belongs to an Arena, so it is released before the file is replaced
+ * (Windows refuses to replace a file that is still mapped) instead of whenever the GC gets to it.
+ * An index written by another analyzer version is ignored, since its results may differ.
+ */
+public class AnalysisIndex {
+
+    private static final int MAGIC = 0x54414D49;   // "TAMI"
+    private static final int FORMAT_VERSION = 1;
+
+    // Stage flags
+    private static final int LEXICAL_PASSED = 1;
+    private static final int SYNTAX_RAN = 2;
+    private static final int SYNTAX_PASSED = 4;
+    private static final int SEMANTIC_RAN = 8;
+    private static final int SEMANTIC_PASSED = 16;
+
+    // What we remember about one file
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final long modified;        // mtime in milliseconds
+        public final long contentHash;     // 0 if the file was streamed and never fully read
+        public final int stages;           // the flags above
+        public final int tokenCount;
+        public final int symbolCount;
+        public final String title;         // title of the last stage that ran
+        public final int errorCount;
+        public final List<Diagnostic> diagnostics;
+
+        public Entry(String path, long size, long modified, long contentHash, int stages, int tokenCount,
+                     int symbolCount, String title, int errorCount, List<Diagnostic> diagnostics) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.contentHash = contentHash;
+            this.stages = stages;
+            this.tokenCount = tokenCount;
+            this.symbolCount = symbolCount;
+            this.title = title;
+            this.errorCount = errorCount;
+            this.diagnostics = diagnostics;
+        }
+
+        public boolean isLexicalPassed() { return (stages & LEXICAL_PASSED) != 0; }
+        public boolean isSyntaxPassed() { return (stages & SYNTAX_PASSED) != 0; }
+        public boolean isSemanticPassed() { return (stages & SEMANTIC_PASSED) != 0; }
+        public boolean passed() { return isSemanticPassed(); }
+
+        // Same file, same content, new mtime (touched or rewritten without changes)
+        Entry withModified(long newModified) {
+            return new Entry(path, size, newModified, contentHash, stages, tokenCount, symbolCount,
+                             title, errorCount, diagnostics);
+        }
+    }
+
+    private final Path file;
+    private Arena arena;                                                 // owns mapped; null when nothing is mapped
+    private ByteBuffer mapped;                                           // the file as last saved; null for a new index
+    private final Map<String, Integer> offsets = new HashMap<>();         // path -> entry offset in mapped
+    private final Map<String, Entry> changed = new LinkedHashMap<>();     // written since opening
+
+    private AnalysisIndex(Path file) {
+        this.file = file;
+    }
+
+    // Open (or start) the index at file. A missing, foreign or outdated file gives an empty index.
+    public static AnalysisIndex open(Path file) throws IOException {
+        AnalysisIndex index = new AnalysisIndex(file);
+        index.map();
+        return index;
+    }
+
+    private void map() throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < 16) return;
+
+        // Shared: save() may run on another thread (the shutdown hook in watch mode)
+        Arena fileArena = Arena.ofShared();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), fileArena).asByteBuffer();
+        } catch (IOException | RuntimeException e) {
+            fileArena.close();
+            throw e;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                || buffer.getInt(8) != CompilerPipeline.ANALYZER_VERSION) {
+            fileArena.close();
+            return;
+        }
+
+        int count = buffer.getInt(12);
+        int offset = 16;
+        try {
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt(offset);
+                offsets.put(readString(buffer, offset + 4), offset);
+                offset += 4 + length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated file (crash while saving an older version): start over
+            offsets.clear();
+            fileArena.close();
+            return;
+        }
+        arena = fileArena;
+        mapped = buffer;
+    }
+
+    private void unmap() {
+        if (arena != null) arena.close();
+        arena = null;
+        mapped = null;
+        offsets.clear();
+    }
+
+    public synchronized Entry get(String path) {
+        Entry entry = changed.get(path);
+        if (entry != null) return entry;
+        Integer offset = offsets.get(path);
+        return offset == null ? null : decode(offset);
+    }
+
+    public synchronized void put(Entry entry) {
+        changed.put(entry.path, entry);
+    }
+
+    public synchronized int size() {
+        int size = changed.size();
+        for (String path : offsets.keySet()) {
+            if (!changed.containsKey(path)) size++;
+        }
+        return size;
+    }
+
+    // Write everything to a temporary file next to the index, then move it into place and map it
+    public synchronized void save() throws IOException {
+        boolean pruned = changed.keySet().removeIf(path -> !exists(path));
+        pruned |= offsets.keySet().removeIf(path -> !exists(path));
+        if (changed.isEmpty() && !pruned) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(CompilerPipeline.ANALYZER_VERSION);
+        out.writeInt(size());
+
+        for (Map.Entry<String, Integer> old : offsets.entrySet()) {
+            if (changed.containsKey(old.getKey())) continue;
+            int offset = old.getValue();
+            byte[] raw = new byte[4 + mapped.getInt(offset)];
+            mapped.get(offset, raw);
+            out.write(raw);
+        }
+        for (Entry entry : changed.values()) {
+            byte[] encoded = encode(entry);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        out.flush();
+
+        // Everything is on the heap now; until the new file is mapped, get() sees only the changes.
+        // The old mapping has to go before the move (Windows refuses to replace a mapped file).
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean unmapped = false;
+        try {
+            Files.write(temp, bytes.toByteArray());
+            unmap();
+            unmapped = true;
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Throwable e) {
+            // Nothing was replaced: map the old file again if it was let go, the changes stay for the next save
+            try {
+                Files.deleteIfExists(temp);
+                if (unmapped) map();
+            } catch (IOException | RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        map();
+        changed.clear();
+    }
+
+    // Is the entry's file still there? Keys are the paths HeadlessMain analyzed.
+    private static boolean exists(String path) {
+        try {
+            return Files.exists(Path.of(path));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    // === BUILDING ENTRIES ===
+
+    public static Entry toEntry(String path, long size, long modified, long contentHash, CompilerPipeline.Result result) {
+        int stages = result.lexical.success ? LEXICAL_PASSED : 0;
+        String title = result.lexical.getTitle();
+        int errorCount = result.lexical.errorCount;
+        List<Diagnostic> diagnostics = result.lexical.diagnostics;
+        if (result.syntax != null) {
+            stages |= SYNTAX_RAN | (result.syntax.success ? SYNTAX_PASSED : 0);
+            title = result.syntax.getTitle();
+            errorCount = result.syntax.errorCount;
+            diagnostics = result.syntax.diagnostics;
+        }
+        int symbolCount = 0;
+        if (result.semantic != null) {
+            stages |= SEMANTIC_RAN | (result.semantic.success ? SEMANTIC_PASSED : 0);
+            title = result.semantic.getTitle();
+            errorCount = result.semantic.errorCount;
+            diagnostics = result.semantic.diagnostics;
+            symbolCount = result.semantic.symbols.size();
+        }
+        return new Entry(path, size, modified, contentHash, stages, result.lexical.tokens.size(),
+                         symbolCount, title, errorCount, diagnostics);
+    }
+
+    // 64-bit hash of a file's bytes, eight bytes at a time (murmur3-style mixing)
+    public static long contentHash(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        long hash = 0x9e3779b97f4a7c15L ^ data.length;
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            hash ^= mix(buffer.getLong(i));
+            hash = Long.rotateLeft(hash, 27) * 5 + 0x52dce729;
+        }
+        long tail = 0;
+        for (int shift = 0; i < data.length; i++, shift += 8) {
+            tail |= (data[i] & 0xffL) << shift;
+        }
+        return mix(hash ^ mix(tail));
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    // === ENCODING ===
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.diagnostics.size() * 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, entry.path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeLong(entry.contentHash);
+        out.writeByte(entry.stages);
+        out.writeInt(entry.tokenCount);
+        out.writeInt(entry.symbolCount);
+        writeString(out, entry.title);
+        out.writeInt(entry.errorCount);
+
+        int count = Math.min(entry.diagnostics.size(), 0xffff);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            Diagnostic diagnostic = entry.diagnostics.get(i);
+            out.writeByte(diagnostic.code.ordinal());
+            out.writeInt(diagnostic.line);
+            out.writeInt(diagnostic.column);
+            out.writeByte(diagnostic.getArgCount());
+            for (int a = 0; a < diagnostic.getArgCount(); a++) writeString(out, diagnostic.getArg(a));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Entry decode(int offset) {
+        ByteBuffer in = mapped.duplicate();
+        in.position(offset + 4);
+        String path = readString(in);
+        long size = in.getLong();
+        long modified = in.getLong();
+        long contentHash = in.getLong();
+        int stages = in.get();
+        int tokenCount = in.getInt();
+        int symbolCount = in.getInt();
+        String title = readString(in);
+        int errorCount = in.getInt();
+
+        int count = in.getShort() & 0xffff;
+        Diagnostic.Code[] codes = Diagnostic.Code.values();
+        List<Diagnostic> diagnostics = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Diagnostic.Code code = codes[in.get()];
+            int line = in.getInt();
+            int column = in.getInt();
+            String[] args = new String[in.get()];
+            for (int a = 0; a < args.length; a++) args[a] = readString(in);
+            diagnostics.add(new Diagnostic(code, line, column, args));
+        }
+        return new Entry(path, size, modified, contentHash, stages, tokenCount, symbolCount,
+                         title, errorCount, diagnostics);
+    }
+
+    // Strings longer than 64KB of UTF-8 (a huge token quoted in an error) are cut short
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(utf8.length, 0xffff);
+        out.writeShort(length);
+        out.write(utf8, 0, length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] utf8 = new byte[in.getShort() & 0xffff];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in, int offset) {
+        int length = in.getShort(offset) & 0xffff;
+        byte[] utf8 = new byte[length];
+        in.get(offset + 2, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,416 @@
+package com.tam.compiler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Local HTTP service that runs the Java analyzers for the web front end (aaa/, Final/),
+ * so the browser no longer needs its own copy of the rules.
+ *
+ * Usage: java com.tam.compiler.AnalysisServer [--port N]      (default 8765, loopback only)
+ *
+ *   POST /analyze   {"code": "..."}                                     one document
+ *                   {"documents": [{"id": "a", "code": "..."}, ...]}    a batch
+ *                   optional "tokens": false to leave the token lists out
+ *   GET  /health    status and load
+ *
+ * Each document gets the same stages CompilerPipeline runs (stopping at the first failure),
+ * with title, message, diagnostics, tokens and the declared variables, as JSON.
+ *
+ * Requests run on virtual threads. Three limits keep the machine usable under load:
+ *  - at most maxConcurrent documents are analyzed at the same time (-Dcompiler.httpMaxConcurrent,
+ *    default one per processor); the documents of a batch are analyzed in parallel within it
+ *  - at most maxQueued requests are accepted at once (-Dcompiler.httpMaxQueued, default 256)
+ *  - at most maxBufferedBytes of request bodies are held at once (-Dcompiler.httpMaxBufferedBytes,
+ *    default 256MB), counting each body 3 times over: its bytes plus the String decoded from them.
+ *    A body without Content-Length counts as the largest allowed.
+ * Beyond either of the last two the answer is 503 with Retry-After, so clients back off instead
+ * of piling up. Bodies above -Dcompiler.httpMaxBodyBytes (default 16MB) are refused with 413.
+ * Results are shared through an AnalysisCache, so identical documents are analyzed once.
+ *
+ * Only the pages of -Dcompiler.httpAllowedOrigins (comma separated, e.g. http://localhost:5500)
+ * may call the service from a browser; by default no web page can, so a site the developer
+ * happens to visit cannot drive it or read its answers.
+ */
+public class AnalysisServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 8765;
+    public static final int DEFAULT_MAX_CONCURRENT =
+            Integer.getInteger("compiler.httpMaxConcurrent", Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_MAX_QUEUED = Integer.getInteger("compiler.httpMaxQueued", 256);
+    public static final int DEFAULT_MAX_BODY_BYTES = Integer.getInteger("compiler.httpMaxBodyBytes", 16 * 1024 * 1024);
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = Long.getLong("compiler.httpMaxBufferedBytes", 256L * 1024 * 1024);
+    public static final Set<String> DEFAULT_ALLOWED_ORIGINS = allowedOrigins(System.getProperty("compiler.httpAllowedOrigins", ""));
+
+    // Bytes a buffered body takes: the bytes read, and the String (up to 2 bytes a char) decoded from them
+    private static final int BUFFER_FACTOR = 3;
+
+    private final HttpServer server;
+    private final ExecutorService requestThreads = Executors.newVirtualThreadPerTaskExecutor();
+    private final AnalysisCache analysisCache = new AnalysisCache(new CompilerPipeline());
+    private final Semaphore analysisPermits;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final int maxBodyBytes;
+    private final long maxBufferedBytes;
+    private final Set<String> allowedOrigins;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    public AnalysisServer(int port) throws IOException {
+        this(port, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_QUEUED, DEFAULT_MAX_BODY_BYTES, DEFAULT_MAX_BUFFERED_BYTES,
+             DEFAULT_ALLOWED_ORIGINS);
+    }
+
+    public AnalysisServer(int port, int maxConcurrent, int maxQueued, int maxBodyBytes, long maxBufferedBytes,
+                          Set<String> allowedOrigins) throws IOException {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.analysisPermits = new Semaphore(this.maxConcurrent);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.maxBodyBytes = maxBodyBytes;
+        // One body of the largest size always fits
+        this.maxBufferedBytes = Math.max(maxBufferedBytes, (long) BUFFER_FACTOR * maxBodyBytes);
+        this.allowedOrigins = Set.copyOf(allowedOrigins);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestThreads);
+        server.createContext("/analyze", this::handleAnalyze);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                try {
+                    port = Integer.parseInt(args[++i]);
+                    continue;
+                } catch (NumberFormatException e) {
+                    // falls through to the usage message
+                }
+            }
+            System.err.println("Usage: java com.tam.compiler.AnalysisServer [--port N]");
+            System.exit(2);
+        }
+
+        AnalysisServer server = new AnalysisServer(port);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/analyze");
+    }
+
+    private static Set<String> allowedOrigins(String list) {
+        Set<String> origins = new HashSet<>();
+        for (String origin : list.split(",")) {
+            if (!origin.isBlank()) origins.add(origin.strip());
+        }
+        return origins;
+    }
+
+    public void start() { server.start(); }
+    public int getPort() { return server.getAddress().getPort(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        requestThreads.shutdownNow();
+    }
+
+    // === HANDLERS ===
+
+    private void handleAnalyze(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (exchange.getRequestMethod().equals("OPTIONS")) {
+                respond(exchange, 204, null);   // CORS preflight from an allowed web page
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST, OPTIONS");
+                respondError(exchange, 405, "Use POST");
+                return;
+            }
+
+            // Back-pressure: refuse early instead of queueing without bound
+            if (admitted.incrementAndGet() > maxQueued) {
+                admitted.decrementAndGet();
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respondError(exchange, 503, "Too many requests in progress, retry later");
+                return;
+            }
+            try {
+                receive(exchange);
+            } finally {
+                admitted.decrementAndGet();
+            }
+        }
+    }
+
+    // Back-pressure by size: room for the body is reserved before it is read
+    private void receive(HttpExchange exchange) throws IOException {
+        long length = contentLength(exchange);
+        if (length > maxBodyBytes) {
+            respondError(exchange, 413, "Request body is larger than " + maxBodyBytes + " bytes");
+            return;
+        }
+        long reserved = (long) BUFFER_FACTOR * (length >= 0 ? length : maxBodyBytes);
+        if (bufferedBytes.addAndGet(reserved) > maxBufferedBytes) {
+            bufferedBytes.addAndGet(-reserved);
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respondError(exchange, 503, "Too much data in progress, retry later");
+            return;
+        }
+        try {
+            analyze(exchange);
+        } catch (RuntimeException e) {
+            // A bug in an analyzer, not in the request; the headers have not been sent yet
+            respondError(exchange, 500, "Analysis failed: " + e);
+        } finally {
+            bufferedBytes.addAndGet(-reserved);
+        }
+    }
+
+    // The declared body size, or -1 without a (valid) Content-Length
+    private static long contentLength(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (header == null) return -1;
+        try {
+            return Long.parseLong(header.strip());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void analyze(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(maxBodyBytes + 1);
+        }
+        if (body.length > maxBodyBytes) {
+            respondError(exchange, 413, "Request body is larger than " + maxBodyBytes + " bytes");
+            return;
+        }
+
+        Object request;
+        try {
+            request = Json.parse(new String(body, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, 400, "Invalid JSON: " + e.getMessage());
+            return;
+        }
+        boolean withTokens = !(request instanceof Map<?, ?> map && Boolean.FALSE.equals(map.get("tokens")));
+
+        // One document, or a batch
+        List<?> batch = Json.array(request, "documents");
+        List<String> ids = new ArrayList<>();
+        List<String> codes = new ArrayList<>();
+        if (batch != null) {
+            for (Object document : batch) {
+                String code = Json.string(document, "code");
+                if (code == null) {
+                    respondError(exchange, 400, "Every document needs a \"code\" string");
+                    return;
+                }
+                Object id = document instanceof Map<?, ?> map ? map.get("id") : null;
+                ids.add(id == null ? String.valueOf(ids.size()) : String.valueOf(id));
+                codes.add(code);
+            }
+        } else {
+            String code = Json.string(request, "code");
+            if (code == null) {
+                respondError(exchange, 400, "Expected {\"code\": ...} or {\"documents\": [...]}");
+                return;
+            }
+            codes.add(code);
+        }
+
+        List<CompilerPipeline.Result> results;
+        try {
+            results = analyzeAll(codes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respondError(exchange, 503, "Server is shutting down");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder(256);
+        if (batch == null) {
+            writeResult(json, null, results.get(0), withTokens);
+        } else {
+            json.append("{\"results\":[");
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) json.append(',');
+                writeResult(json, ids.get(i), results.get(i), withTokens);
+            }
+            json.append("]}");
+        }
+        respond(exchange, 200, json.toString());
+    }
+
+    // Every document on its own virtual thread, each waiting for one of the analysis permits
+    private List<CompilerPipeline.Result> analyzeAll(List<String> codes) throws InterruptedException {
+        if (codes.size() == 1) return List.of(analyzeOne(codes.get(0)));
+
+        List<Future<CompilerPipeline.Result>> futures = new ArrayList<>(codes.size());
+        try (ExecutorService documents = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String code : codes) futures.add(documents.submit(() -> analyzeOne(code)));
+
+            List<CompilerPipeline.Result> results = new ArrayList<>(codes.size());
+            for (Future<CompilerPipeline.Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException cause) throw cause;
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            for (Future<CompilerPipeline.Result> future : futures) future.cancel(true);
+        }
+    }
+
+    private CompilerPipeline.Result analyzeOne(String code) throws InterruptedException {
+        analysisPermits.acquire();
+        try {
+            return analysisCache.analyze(code);
+        } finally {
+            analysisPermits.release();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String json = "{\"status\":\"ok\",\"analyzerVersion\":" + CompilerPipeline.ANALYZER_VERSION
+                    + ",\"requestsInProgress\":" + admitted.get()
+                    + ",\"maxQueued\":" + maxQueued
+                    + ",\"bufferedBytes\":" + bufferedBytes.get()
+                    + ",\"rejected\":" + rejected.get()
+                    + ",\"analyzing\":" + (maxConcurrent - analysisPermits.availablePermits())
+                    + ",\"cache\":" + Json.write(analysisCache.toString()) + "}";
+            respond(exchange, 200, json);
+        }
+    }
+
+    // === JSON ===
+
+    private static void writeResult(StringBuilder json, String id, CompilerPipeline.Result result, boolean withTokens) {
+        json.append('{');
+        if (id != null) {
+            json.append("\"id\":");
+            Json.writeString(json, id);
+            json.append(',');
+        }
+        json.append("\"success\":").append(result.isSuccess());
+
+        json.append(",\"lexical\":");
+        writeStage(json, result.lexical.success, result.lexical.getTitle(), result.lexical.getMessage(),
+                   result.lexical.errorCount, result.lexical.diagnostics);
+        if (withTokens) {
+            TokenBuffer tokens = result.lexical.tokens;
+            json.append(",\"tokens\":[");
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append("{\"type\":\"").append(tokens.typeName(i)).append("\",\"value\":");
+                Json.writeString(json, tokens.value(i));
+                json.append(",\"line\":").append(tokens.line(i)).append('}');
+            }
+            json.append(']');
+        }
+        json.append('}');
+
+        json.append(",\"syntax\":");
+        if (result.syntax == null) {
+            json.append("null");
+        } else {
+            writeStage(json, result.syntax.success, result.syntax.getTitle(), result.syntax.getMessage(),
+                       result.syntax.errorCount, result.syntax.diagnostics);
+            json.append('}');
+        }
+
+        json.append(",\"semantic\":");
+        if (result.semantic == null) {
+            json.append("null");
+        } else {
+            writeStage(json, result.semantic.success, result.semantic.getTitle(), result.semantic.getMessage(),
+                       result.semantic.errorCount, result.semantic.diagnostics);
+            SymbolTable symbols = result.semantic.symbols;
+            json.append(",\"variables\":{");
+            for (int i = 0; i < symbols.size(); i++) {
+                if (i > 0) json.append(',');
+                Json.writeString(json, symbols.name(i));
+                json.append(":{\"type\":\"").append(symbols.typeName(i)).append("\",\"value\":");
+                Json.writeString(json, symbols.value(i));
+                json.append(",\"line\":").append(symbols.line(i)).append('}');
+            }
+            json.append("}}");
+        }
+        json.append('}');
+    }
+
+    // Writes an unclosed stage object, so the caller can add the stage's own members
+    private static void writeStage(StringBuilder json, boolean success, String title, String message,
+                                   int errorCount, List<Diagnostic> diagnostics) {
+        json.append("{\"success\":").append(success).append(",\"title\":");
+        Json.writeString(json, title);
+        json.append(",\"message\":");
+        Json.writeString(json, message);
+        json.append(",\"errorCount\":").append(errorCount).append(",\"diagnostics\":[");
+        for (int i = 0; i < diagnostics.size(); i++) {
+            Diagnostic diagnostic = diagnostics.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"code\":\"").append(diagnostic.code.name())
+                .append("\",\"line\":").append(diagnostic.line)
+                .append(",\"column\":").append(diagnostic.column)
+                .append(",\"message\":");
+            Json.writeString(json, diagnostic.getMessage());
+            json.append('}');
+        }
+        json.append(']');
+    }
+
+    // === HTTP ===
+
+    private void respondError(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, "{\"error\":" + Json.write(message) + "}");
+    }
+
+    private void respond(HttpExchange exchange, int status, String json) throws IOException {
+        // CORS headers only for an allowed page; a browser keeps every other page from the answer
+        String origin = exchange.getRequestHeaders().getFirst("Origin");
+        exchange.getResponseHeaders().set("Vary", "Origin");
+        if (origin != null && allowedOrigins.contains(origin)) {
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", origin);
+            exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "POST, GET, OPTIONS");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+        }
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
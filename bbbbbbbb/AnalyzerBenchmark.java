@@ -0,0 +1,238 @@
+package com.tam.compiler;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+/*
+ * Throughput / latency / allocation benchmark for the analyzers, run on generated corpora.
+ *
+ * Usage: java com.tam.compiler.AnalyzerBenchmark [--lines N] [--error-rate R] [--warmup N]
+ *                                                [--iterations N] [--samples file,file] [--only name,name]
+ *
+ * Every benchmark gets warm-up rounds (to let the JIT settle) and then timed rounds.
+ * For each one we print operations/second, characters/second, latency (min / median / max)
+ * and bytes allocated per operation, measured on the benchmark thread.
+ *
+ * "literals-regex" and "literals" compare the old regex + Long.parseLong value check with
+ * LiteralChecker on --lines typed literals, about half of them out of range for their type.
+ *
+ * "codegen" generates the class files for the corpus's symbol table, "codegen-run" also
+ * defines and runs them (without the class cache). Both need a corpus without errors.
+ */
+public class AnalyzerBenchmark {
+
+    private static volatile int sink;   // Results go here so the JIT cannot drop the work
+
+    public static void main(String[] args) throws Exception {
+        int lines = 100_000;
+        double errorRate = 0.0;
+        int warmup = 5;
+        int iterations = 10;
+        List<Path> samples = List.of(Path.of("test1_success.java"), Path.of("ExampleTest.java"));
+        List<String> only = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--lines" -> lines = Integer.parseInt(args[++i]);
+                case "--error-rate" -> errorRate = Double.parseDouble(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--samples" -> samples = Arrays.stream(args[++i].split(",")).map(Path::of).toList();
+                case "--only" -> only = Arrays.asList(args[++i].split(","));
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        String code = new CorpusGenerator(samples).generate(lines, errorRate, 42);
+
+        LexicalAnalyzer lexicalAnalyzer = new LexicalAnalyzer();
+        SyntaxAnalyzer syntaxAnalyzer = new SyntaxAnalyzer();
+        SemanticAnalyzer semanticAnalyzer = new SemanticAnalyzer();
+        CompilerPipeline pipeline = new CompilerPipeline(lexicalAnalyzer, syntaxAnalyzer, semanticAnalyzer);
+        ParallelAnalyzer parallelAnalyzer = new ParallelAnalyzer();
+
+        Map<String, ToIntFunction<String>> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("lexical", source -> lexicalAnalyzer.analyze(source).errorCount);
+        benchmarks.put("syntax", source -> syntaxAnalyzer.analyze(source).errorCount);
+        benchmarks.put("semantic", source -> semanticAnalyzer.analyze(source).errorCount);
+        benchmarks.put("separate-stages", source -> lexicalAnalyzer.analyze(source).errorCount
+                + syntaxAnalyzer.analyze(source).errorCount
+                + semanticAnalyzer.analyze(source).errorCount);
+        benchmarks.put("pipeline", source -> pipeline.run(source).lexical.errorCount);
+        benchmarks.put("parallel", source -> parallelAnalyzer.analyze(source).lexical.errorCount);
+
+        // The symbols are only built once; the table is empty if the corpus has errors
+        SymbolTable symbols = semanticAnalyzer.analyze(code).symbols;
+        CodeGenerator codeGenerator = new CodeGenerator(0);
+        benchmarks.put("codegen", source -> codeGenerator.generate(symbols).size());
+        benchmarks.put("codegen-run", source -> codeGenerator.compile(symbols).classes.size());
+
+        // One "type value" pair per line; both literal benchmarks check the same pre-split values
+        String literalCorpus = generateLiterals(lines, 42);
+        String[] literalLines = literalCorpus.split("\n");
+        String[] literalTypes = new String[literalLines.length];
+        String[] literalValues = new String[literalLines.length];
+        for (int i = 0; i < literalLines.length; i++) {
+            int space = literalLines[i].indexOf(' ');
+            literalTypes[i] = literalLines[i].substring(0, space);
+            literalValues[i] = literalLines[i].substring(space + 1);
+        }
+        LegacyLiteralCheck legacy = new LegacyLiteralCheck();
+        benchmarks.put("literals-regex", source -> {
+            int valid = 0;
+            for (int i = 0; i < literalValues.length; i++) {
+                if (legacy.isValidValueForType(literalTypes[i], literalValues[i])) valid++;
+            }
+            return valid;
+        });
+        benchmarks.put("literals", source -> {
+            int valid = 0;
+            for (int i = 0; i < literalValues.length; i++) {
+                if (LiteralChecker.isValid(SymbolTable.typeOf(literalTypes[i]), literalValues[i], 0, literalValues[i].length())) valid++;
+            }
+            return valid;
+        });
+
+        System.out.printf("Corpus: %,d lines, %,d chars, error rate %.3f%n%n", lines, code.length(), errorRate);
+        System.out.printf("%-16s %12s %14s %10s %10s %10s %14s %12s%n",
+                "benchmark", "ops/s", "chars/s", "min ms", "p50 ms", "max ms", "alloc B/op", "alloc MB/s");
+
+        for (Map.Entry<String, ToIntFunction<String>> benchmark : benchmarks.entrySet()) {
+            if (only != null && !only.contains(benchmark.getKey())) continue;
+            int chars = benchmark.getKey().startsWith("literals") ? literalCorpus.length() : code.length();
+            run(benchmark.getKey(), benchmark.getValue(), code, chars, warmup, iterations);
+        }
+    }
+
+    private static void run(String name, ToIntFunction<String> benchmark, String code, int chars,
+                            int warmup, int iterations) {
+        for (int i = 0; i < warmup; i++) {
+            sink += benchmark.applyAsInt(code);
+        }
+
+        long[] times = new long[iterations];
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            sink += benchmark.applyAsInt(code);
+            times[i] = System.nanoTime() - start;
+            allocated += allocatedBytes() - bytesBefore;
+        }
+
+        long total = Arrays.stream(times).sum();
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double seconds = total / 1e9;
+
+        String allocPerOp = ALLOCATION_SUPPORTED ? String.valueOf(allocated / iterations) : "n/a";
+        String allocRate = ALLOCATION_SUPPORTED ? String.format("%.1f", allocated / seconds / (1024 * 1024)) : "n/a";
+        System.out.printf("%-16s %12.2f %14.0f %10.2f %10.2f %10.2f %14s %12s%n",
+                name,
+                iterations / seconds,
+                (double) chars * iterations / seconds,
+                sorted[0] / 1e6,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length - 1] / 1e6,
+                allocPerOp,
+                allocRate);
+    }
+
+    // === LITERAL CORPUS ===
+    // Integral values of 1 to 25 digits (so many overflow their type, some even a long),
+    // plus floats, doubles and the non-numeric types, in "type value" lines.
+    private static String generateLiterals(int count, long seed) {
+        String[] types = {"byte", "short", "int", "long", "float", "double", "char", "boolean", "String"};
+        Random random = new Random(seed);
+        StringBuilder corpus = new StringBuilder(count * 20);
+        for (int i = 0; i < count; i++) {
+            String type = types[random.nextInt(types.length)];
+            corpus.append(type).append(' ');
+            switch (type) {
+                case "char" -> corpus.append('\'').append((char) ('a' + random.nextInt(26))).append('\'');
+                case "boolean" -> corpus.append(random.nextBoolean());
+                case "String" -> corpus.append("\"value").append(i).append('"');
+                default -> {
+                    if (random.nextBoolean()) corpus.append('-');
+                    int digits = 1 + random.nextInt(25);
+                    corpus.append((char) ('1' + random.nextInt(9)));
+                    for (int d = 1; d < digits; d++) corpus.append((char) ('0' + random.nextInt(10)));
+                    if (type.equals("long") && random.nextBoolean()) corpus.append('L');
+                    if (type.equals("double") && random.nextBoolean()) corpus.append('.').append(random.nextInt(1000));
+                    if (type.equals("float")) corpus.append('.').append(random.nextInt(1000)).append('f');
+                }
+            }
+            corpus.append('\n');
+        }
+        return corpus.toString();
+    }
+
+    // The value check SemanticAnalyzer used before LiteralChecker, kept only for comparison
+    private static class LegacyLiteralCheck {
+        private final Map<String, Pattern> typeChecks = new LinkedHashMap<>();
+
+        LegacyLiteralCheck() {
+            typeChecks.put("int", Pattern.compile("^-?\\d+$"));
+            typeChecks.put("byte", Pattern.compile("^-?\\d+$"));
+            typeChecks.put("short", Pattern.compile("^-?\\d+$"));
+            typeChecks.put("long", Pattern.compile("^-?\\d+[lL]?$"));
+            typeChecks.put("double", Pattern.compile("^-?\\d+(\\.\\d+)?[dD]?$"));
+            typeChecks.put("float", Pattern.compile("^-?\\d+(\\.\\d+)?[fF]$|^-?\\d+$"));
+            typeChecks.put("char", Pattern.compile("^'.'$"));
+            typeChecks.put("boolean", Pattern.compile("^(true|false)$"));
+            typeChecks.put("String", Pattern.compile("^\"[^\"]*\"$"));
+        }
+
+        boolean isValidValueForType(String type, String value) {
+            Pattern pattern = typeChecks.get(type);
+            if (pattern == null || !pattern.matcher(value).matches()) return false;
+            try {
+                switch (type) {
+                    case "byte":
+                        if (value.matches("-?\\d+")) {
+                            long val = Long.parseLong(value);
+                            return val >= -128 && val <= 127;
+                        }
+                        break;
+                    case "short":
+                        if (value.matches("-?\\d+")) {
+                            long val = Long.parseLong(value);
+                            return val >= -32768 && val <= 32767;
+                        }
+                        break;
+                    case "int":
+                        if (value.matches("-?\\d+")) {
+                            long val = Long.parseLong(value);
+                            return val >= -2147483648L && val <= 2147483647L;
+                        }
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    // === ALLOCATION COUNTER ===
+    // Bytes allocated by the benchmark thread (HotSpot-specific, like JMH's GC profiler).
+    // Work done on other threads (the "parallel" benchmark) is not included.
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads ? threads : null;
+    private static final boolean ALLOCATION_SUPPORTED =
+            THREADS != null && THREADS.isThreadAllocatedMemorySupported();
+
+    private static long allocatedBytes() {
+        return ALLOCATION_SUPPORTED ? THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId()) : 0;
+    }
+}
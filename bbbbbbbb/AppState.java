@@ -1,6 +1,6 @@
 package com.tam.compiler;
 
-import java.util.List;
+import java.nio.file.Path;
 import java.util.Map;
 
 public class AppState {
@@ -9,8 +9,10 @@ public class AppState {
     private boolean syntaxPassed = false;
     private boolean semanticPassed = false;
     private boolean hasError = false;
-    private List<LexicalAnalyzer.Token> tokens;
+    private Path loadedFile;   // absolute; null for pasted code
+    private TokenBuffer tokens;
     private Map<String, SemanticAnalyzer.VariableInfo> variables;
+    private CodeGenerator.Program program;   // set by Run All when every stage passed
 
     public void reset() {
         fileLoaded = false;
@@ -18,8 +20,10 @@ public class AppState {
         syntaxPassed = false;
         semanticPassed = false;
         hasError = false;
+        loadedFile = null;
         tokens = null;
         variables = null;
+        program = null;
     }
 
     // Getters and setters
@@ -42,10 +46,14 @@ public class AppState {
     }
     public boolean isSemanticPassed() { return semanticPassed; }
     public void setSemanticPassed(boolean semanticPassed) { this.semanticPassed = semanticPassed; }
-    public List<LexicalAnalyzer.Token> getTokens() { return tokens; }
-    public void setTokens(List<LexicalAnalyzer.Token> tokens) { this.tokens = tokens; }
+    public Path getLoadedFile() { return loadedFile; }
+    public void setLoadedFile(Path loadedFile) { this.loadedFile = loadedFile; }
+    public TokenBuffer getTokens() { return tokens; }
+    public void setTokens(TokenBuffer tokens) { this.tokens = tokens; }
     public Map<String, SemanticAnalyzer.VariableInfo> getVariables() { return variables; }
     public void setVariables(Map<String, SemanticAnalyzer.VariableInfo> variables) { this.variables = variables; }
+    public CodeGenerator.Program getProgram() { return program; }
+    public void setProgram(CodeGenerator.Program program) { this.program = program; }
     public boolean hasError() { return hasError; }
     public void setHasError(boolean hasError) { this.hasError = hasError; }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.tam.compiler;
+
+import java.util.concurrent.CancellationException;
+
+/*
+ * How a long analysis notices that nobody wants its result any more.
+ *
+ * The caller interrupts the thread (AnalysisExecutor, LspServer and AnalysisServer all cancel
+ * their futures that way); the analyzers check every 1024 lines or so and give up with a
+ * CancellationException. Without an interrupt nothing happens, so the headless paths pay one
+ * flag read per check.
+ */
+final class Cancellation {
+
+    private Cancellation() {}
+
+    static void throwIfCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Analysis cancelled");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.tam.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Just enough of the JVM class file format (JVMS chapter 4) for what CodeGenerator emits:
+ * one class with static fields, each with a ConstantValue attribute or set by a static
+ * initializer, and nothing else.
+ *
+ * Constants are pooled as they are asked for (each one once), fields and the initializer's
+ * code are buffered, and toByteArray() puts the pieces together in class file order.
+ * The initializer has no branches, so no StackMapTable is needed; without code there is none.
+ *
+ * The format caps a class at 65535 constant pool slots and a method at 65535 bytes of code;
+ * callers look at constantCount() and codeLength() and start another class in time.
+ */
+final class ClassFileWriter {
+
+    static final int MAX_CONSTANTS = 65535;
+    static final int MAX_CODE_LENGTH = 65535;
+    static final int MAX_UTF8_LENGTH = 65535;   // bytes of modified UTF-8 in one constant
+
+    private static final int CLASS_VERSION = 65;   // Java 21
+
+    // Access flags
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    // Opcodes
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int RETURN = 0xb1;
+    static final int PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6;
+
+    // A pooled constant: its tag and the one or two things that identify it
+    private record Key(int tag, Object first, Object second) {}
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream(1024);
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<Key, Integer> constants = new HashMap<>();
+    private int nextConstant = 1;
+
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream(1024);
+    private final DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int fieldCount = 0;
+
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream(1024);
+    private int maxStack = 0;
+
+    // === CONSTANT POOL ===
+    // Each returns the index of the constant, adding it the first time
+
+    int utf8(String value) {
+        return constant(new Key(CONSTANT_UTF8, value, null), 1, out -> out.writeUTF(value));
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant(new Key(CONSTANT_CLASS, internalName, null), 1, out -> out.writeShort(name));
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        return constant(new Key(CONSTANT_STRING, value, null), 1, out -> out.writeShort(utf8));
+    }
+
+    int integer(int value) {
+        return constant(new Key(CONSTANT_INTEGER, value, null), 1, out -> out.writeInt(value));
+    }
+
+    // By bit pattern, so -0.0f and 0.0f stay two constants
+    int floating(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        return constant(new Key(CONSTANT_FLOAT, bits, null), 1, out -> out.writeInt(bits));
+    }
+
+    int longInteger(long value) {
+        return constant(new Key(CONSTANT_LONG, value, null), 2, out -> out.writeLong(value));
+    }
+
+    int doubleFloating(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant(new Key(CONSTANT_DOUBLE, bits, null), 2, out -> out.writeLong(bits));
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerClass = classRef(owner);
+        int nameUtf8 = utf8(name);
+        int descriptorUtf8 = utf8(descriptor);
+        int nameAndType = constant(new Key(CONSTANT_NAME_AND_TYPE, name, descriptor), 1, out -> {
+            out.writeShort(nameUtf8);
+            out.writeShort(descriptorUtf8);
+        });
+        return constant(new Key(tag, owner, nameAndType), 1, out -> {
+            out.writeShort(ownerClass);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // A long or a double takes two slots of the pool
+    private int constant(Key key, int slots, Entry entry) {
+        Integer index = constants.get(key);
+        if (index != null) return index;
+        try {
+            pool.writeByte(key.tag());
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // cannot happen, it is all in memory
+        }
+        int added = nextConstant;
+        nextConstant += slots;
+        constants.put(key, added);
+        return added;
+    }
+
+    // Slots used so far, including the unused slot 0
+    int constantCount() { return nextConstant; }
+
+    // === FIELDS ===
+
+    // constantValue is the pool index of the field's value, or 0 if the static initializer sets it
+    void field(int access, String name, String descriptor, int constantValue) {
+        int nameUtf8 = utf8(name);
+        int descriptorUtf8 = utf8(descriptor);
+        int attributeName = constantValue == 0 ? 0 : utf8("ConstantValue");
+        try {
+            fields.writeShort(access);
+            fields.writeShort(nameUtf8);
+            fields.writeShort(descriptorUtf8);
+            if (constantValue == 0) {
+                fields.writeShort(0);   // no attributes
+            } else {
+                fields.writeShort(1);
+                fields.writeShort(attributeName);
+                fields.writeInt(2);
+                fields.writeShort(constantValue);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fieldCount++;
+    }
+
+    int fieldCount() { return fieldCount; }
+
+    // === STATIC INITIALIZER CODE ===
+
+    void op(int opcode) {
+        codeBytes.write(opcode);
+    }
+
+    // ldc takes a one byte operand, everything else here a two byte one
+    void op(int opcode, int operand) {
+        codeBytes.write(opcode);
+        if (opcode != LDC) codeBytes.write(operand >> 8);
+        codeBytes.write(operand);
+    }
+
+    // Pushes a (one slot) constant with the shortest form of ldc
+    void loadConstant(int index) {
+        if (index < 256) op(LDC, index);
+        else op(LDC_W, index);
+    }
+
+    void stackDepth(int depth) {
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    int codeLength() { return codeBytes.size(); }
+
+    // === CLASS FILE ===
+    // A public final class that extends Object and has the fields and the <clinit> added so far
+    byte[] toByteArray(String internalName) {
+        int thisClass = classRef(internalName);
+        int superClass = classRef("java/lang/Object");
+        boolean hasCode = codeBytes.size() > 0;
+        int clinitName = hasCode ? utf8("<clinit>") : 0;
+        int clinitDescriptor = hasCode ? utf8("()V") : 0;
+        int codeName = hasCode ? utf8("Code") : 0;
+        if (nextConstant > MAX_CONSTANTS) throw new IllegalStateException("Too many constants: " + nextConstant);
+        if (codeBytes.size() + 1 > MAX_CODE_LENGTH) throw new IllegalStateException("Code too long: " + codeBytes.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(poolBytes.size() + fieldBytes.size() + codeBytes.size() + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(nextConstant);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);   // no interfaces
+
+            out.writeShort(fieldCount);
+            fieldBytes.writeTo(out);
+
+            if (!hasCode) {
+                out.writeShort(0);   // no methods
+                out.writeShort(0);   // no class attributes
+                return bytes.toByteArray();
+            }
+            out.writeShort(1);   // one method: static {}
+            out.writeShort(ACC_STATIC);
+            out.writeShort(clinitName);
+            out.writeShort(clinitDescriptor);
+            out.writeShort(1);   // its Code attribute
+            int codeLength = codeBytes.size() + 1;   // and the closing return
+            out.writeShort(codeName);
+            out.writeInt(2 + 2 + 4 + codeLength + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(0);   // no locals
+            out.writeInt(codeLength);
+            codeBytes.writeTo(out);
+            out.writeByte(RETURN);
+            out.writeShort(0);   // no exception handlers
+            out.writeShort(0);   // no attributes
+
+            out.writeShort(0);   // no class attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Bytes value takes as modified UTF-8 (JVMS 4.4.7): U+0000 and anything from U+0080 take two or three
+    static int utf8Length(CharSequence value, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            length += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,274 @@
+package com.tam.compiler;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The backend: turns the declarations that passed the Semantic stage into JVM bytecode
+ * and runs it in this JVM.
+ *
+ * Every variable becomes a public static final field of its type, holding the value the
+ * Semantic stage folded (see ConstantFolder). Like javac does for constant variables, the
+ * value is the field's ConstantValue attribute; only a String too long for one constant is
+ * put together by the static initializer. Running the program is initializing the class,
+ * after which the fields hold exactly the checked values; Program.get() reads them back.
+ * (Setting every field in <clinit> instead costs the JVM a field lookup per putstatic,
+ * which made defining a class quadratic in its field count.)
+ *
+ * The fields are spread over small classes of at most FIELDS_PER_CLASS each (and never more
+ * than a class file can hold, see ClassFileWriter). They are defined as hidden classes in this
+ * package: no class loader of our own, no names to clash between runs, and the JVM unloads
+ * them once nothing refers to them any more.
+ *
+ * Defined classes are cached by their content (a hash of the class file plus equals(), like
+ * AnalysisCache does for sources), so generating the same declarations again costs one
+ * lookup per class instead of defining, verifying and initializing it again. The cache keeps
+ * the least recently used classes up to -Dcompiler.classCacheBytes of class files
+ * (default 16MB, 0 turns it off). Thread-safe.
+ */
+public class CodeGenerator {
+
+    public static final long DEFAULT_CACHE_BYTES = Long.getLong("compiler.classCacheBytes", 16L * 1024 * 1024);
+
+    static final String CLASS_NAME = "com/tam/compiler/Program";
+    // Defining a class costs the JVM more than linear time in its fields: 200k fields load
+    // about 15x faster in classes of 64 than of 4096
+    static final int FIELDS_PER_CLASS = 64;
+
+    // Constant pool slots still to come (ConstantValue, then this class, Object, <clinit>, ()V, Code)
+    private static final int RESERVED_CONSTANTS = 10;
+
+    private static final String[] DESCRIPTORS = {
+        "I", "B", "S", "J", "F", "D", "C", "Z", "Ljava/lang/String;"
+    };
+
+    // The classes of one run, in declaration order
+    public static class Program {
+        public final List<Class<?>> classes;
+        public final long classBytes;     // size of all class files together
+        public final int cachedClasses;   // how many were taken from the cache instead of defined
+        private Map<String, Field> fields;
+
+        Program(List<Class<?>> classes, long classBytes, int cachedClasses) {
+            this.classes = classes;
+            this.classBytes = classBytes;
+            this.cachedClasses = cachedClasses;
+        }
+
+        // The value the static initializer stored for a variable (boxed), or null if there is none
+        public Object get(String name) {
+            Field field = fields().get(name);
+            if (field == null) return null;
+            try {
+                return field.get(null);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);   // public fields of our own package
+            }
+        }
+
+        // Every field by name, looked up once on the first get()
+        private synchronized Map<String, Field> fields() {
+            if (fields == null) {
+                fields = new HashMap<>();
+                for (Class<?> type : classes) {
+                    for (Field field : type.getFields()) fields.put(field.getName(), field);
+                }
+            }
+            return fields;
+        }
+    }
+
+    private static class Entry {
+        final byte[] classFile;
+        final Class<?> type;
+
+        Entry(byte[] classFile, Class<?> type) {
+            this.classFile = classFile;
+            this.type = type;
+        }
+    }
+
+    private final long maxCacheBytes;
+    private final LinkedHashMap<Long, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes = 0;
+
+    private long hits, misses;
+
+    public CodeGenerator() {
+        this(DEFAULT_CACHE_BYTES);
+    }
+
+    public CodeGenerator(long maxCacheBytes) {
+        if (maxCacheBytes < 0) throw new IllegalArgumentException("maxCacheBytes must not be negative");
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    // generate() then load()
+    public Program compile(SymbolTable symbols) {
+        return load(generate(symbols));
+    }
+
+    // === CODE GENERATION ===
+    // The class files for every symbol, in table (= declaration) order
+    public List<byte[]> generate(SymbolTable symbols) {
+        List<byte[]> classFiles = new ArrayList<>(symbols.size() / FIELDS_PER_CLASS + 1);
+        ClassFileWriter writer = new ClassFileWriter();
+        for (int i = 0; i < symbols.size(); i++) {
+            if ((i & 1023) == 1023) Cancellation.throwIfCancelled();
+            String[] chunks = symbols.type(i) == SymbolTable.STRING ? chunks(symbols.stringValue(i)) : null;
+            if (!fits(writer, chunks)) {
+                classFiles.add(writer.toByteArray(CLASS_NAME));
+                writer = new ClassFileWriter();
+            }
+            field(writer, symbols, i, chunks);
+        }
+        if (writer.fieldCount() > 0 || classFiles.isEmpty()) classFiles.add(writer.toByteArray(CLASS_NAME));
+        return classFiles;
+    }
+
+    // Is there room for one more field in this class? A first field always goes in.
+    private static boolean fits(ClassFileWriter writer, String[] chunks) {
+        if (writer.fieldCount() == 0) return true;
+        if (writer.fieldCount() >= FIELDS_PER_CLASS) return false;
+        // Worst case: the name and 2 slots for the value. A String of several parts also needs
+        // 2 slots per part, its NameAndType and Fieldref, and String.concat's Methodref (6 slots);
+        // and code: ldc_w per part, invokevirtual per part after the first, putstatic.
+        if (chunks == null || chunks.length == 1) {
+            return writer.constantCount() + 3 + RESERVED_CONSTANTS <= ClassFileWriter.MAX_CONSTANTS;
+        }
+        int constants = 1 + 2 * chunks.length + 2 + 6;
+        int code = 3 * chunks.length + 3 * (chunks.length - 1) + 3;
+        return writer.constantCount() + constants + RESERVED_CONSTANTS <= ClassFileWriter.MAX_CONSTANTS
+            && writer.codeLength() + code + 1 <= ClassFileWriter.MAX_CODE_LENGTH;
+    }
+
+    // Declares the field with its value as a ConstantValue attribute, the way javac compiles a
+    // constant variable. Only a String too long for one constant is put together in <clinit>.
+    private static void field(ClassFileWriter writer, SymbolTable symbols, int index, String[] chunks) {
+        int access = ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL;
+        String name = symbols.name(index);
+        byte type = symbols.type(index);
+        String descriptor = DESCRIPTORS[type];
+        int constant = switch (type) {
+            case SymbolTable.LONG -> writer.longInteger(symbols.longValue(index));
+            case SymbolTable.FLOAT -> writer.floating(symbols.floatValue(index));
+            case SymbolTable.DOUBLE -> writer.doubleFloating(symbols.doubleValue(index));
+            case SymbolTable.STRING -> chunks.length == 1 ? writer.string(chunks[0]) : 0;
+            default -> {
+                // A char literal may be a code point outside the BMP, which no JVM char holds: it gets an int
+                int number = symbols.intValue(index);
+                if (type == SymbolTable.CHAR && number > Character.MAX_VALUE) descriptor = "I";
+                yield writer.integer(number);
+            }
+        };
+        writer.field(access, name, descriptor, constant);
+        if (constant != 0) return;
+
+        writer.loadConstant(writer.string(chunks[0]));
+        for (int c = 1; c < chunks.length; c++) {
+            writer.loadConstant(writer.string(chunks[c]));
+            writer.op(ClassFileWriter.INVOKEVIRTUAL,
+                      writer.methodRef("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;"));
+        }
+        writer.op(ClassFileWriter.PUTSTATIC, writer.fieldRef(CLASS_NAME, name, descriptor));
+        writer.stackDepth(2);
+    }
+
+    // value cut into pieces of at most MAX_UTF8_LENGTH bytes each (almost always just one)
+    private static String[] chunks(String value) {
+        if (value.length() * 3 <= ClassFileWriter.MAX_UTF8_LENGTH
+                || ClassFileWriter.utf8Length(value, 0, value.length()) <= ClassFileWriter.MAX_UTF8_LENGTH) {
+            return new String[] { value };
+        }
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int length = ClassFileWriter.utf8Length(value, i, i + 1);
+            if (bytes + length > ClassFileWriter.MAX_UTF8_LENGTH) {
+                chunks.add(value.substring(start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += length;
+        }
+        chunks.add(value.substring(start));
+        return chunks.toArray(new String[0]);
+    }
+
+    // === LOADING AND RUNNING ===
+    // Defines each class and runs its static initializer, unless the same class file is cached
+    public Program load(List<byte[]> classFiles) {
+        List<Class<?>> classes = new ArrayList<>(classFiles.size());
+        long bytes = 0;
+        int cached = 0;
+        for (byte[] classFile : classFiles) {
+            Cancellation.throwIfCancelled();
+            Class<?> type = get(classFile);
+            if (type != null) {
+                cached++;
+            } else {
+                type = define(classFile);
+                put(classFile, type);
+            }
+            classes.add(type);
+            bytes += classFile.length;
+        }
+        return new Program(List.copyOf(classes), bytes, cached);
+    }
+
+    private static Class<?> define(byte[] classFile) {
+        try {
+            // initialize = true: defining the class also runs the program
+            return MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);   // the class is in our own package
+        }
+    }
+
+    // === CACHE ===
+
+    private synchronized Class<?> get(byte[] classFile) {
+        Entry entry = cache.get(hash(classFile));
+        if (entry != null && Arrays.equals(entry.classFile, classFile)) {
+            hits++;
+            return entry.type;
+        }
+        misses++;
+        return null;
+    }
+
+    private synchronized void put(byte[] classFile, Class<?> type) {
+        if (classFile.length > maxCacheBytes) return;   // would push out everything else
+        Entry previous = cache.put(hash(classFile), new Entry(classFile, type));
+        if (previous != null) cacheBytes -= previous.classFile.length;
+        cacheBytes += classFile.length;
+
+        Iterator<Map.Entry<Long, Entry>> eldest = cache.entrySet().iterator();
+        while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+            cacheBytes -= eldest.next().getValue().classFile.length;
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clearCache() {
+        cache.clear();
+        cacheBytes = 0;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized int getCachedClassCount() { return cache.size(); }
+
+    // Arrays.hashCode() plus the length; collisions are harmless, get() compares the bytes
+    private static long hash(byte[] classFile) {
+        return ((long) Arrays.hashCode(classFile) << 32) | (classFile.length & 0xffffffffL);
+    }
+}
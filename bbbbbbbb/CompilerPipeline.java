@@ -0,0 +1,261 @@
+package com.tam.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Runs Lexical -> Syntax -> Semantic analysis in ONE pass over the source.
+ * Each line is tokenized once; every statement the new tokens complete is then parsed
+ * into the syntax tree and its declarations checked, instead of splitting and
+ * regex-matching the raw text again.
+ * The per-stage Result objects are the same ones the individual analyzers return.
+ *
+ * runAll() goes one step further when the code passes: CodeGenerator turns the declarations
+ * into bytecode and runs it, and both steps are timed like the analysis stages.
+ */
+public class CompilerPipeline {
+
+    // Bump whenever a rule change alters what the analyzers report, so cached results
+    // (AnalysisCache) from older rules are never reused
+    public static final int ANALYZER_VERSION = 4;
+
+    public static class Result {
+        public final LexicalAnalyzer.Result lexical;
+        public final SyntaxAnalyzer.Result syntax;      // null if the Lexical stage failed
+        public final SemanticAnalyzer.Result semantic;  // null if an earlier stage failed
+        public final CodeGenerator.Program program;     // only from runAll(), and only if every stage passed
+        public final List<StageTiming> timings;         // only filled by runAll()
+
+        public Result(LexicalAnalyzer.Result lexical, SyntaxAnalyzer.Result syntax, SemanticAnalyzer.Result semantic) {
+            this(lexical, syntax, semantic, null, List.of());
+        }
+
+        public Result(LexicalAnalyzer.Result lexical, SyntaxAnalyzer.Result syntax, SemanticAnalyzer.Result semantic,
+                      CodeGenerator.Program program, List<StageTiming> timings) {
+            this.lexical = lexical;
+            this.syntax = syntax;
+            this.semantic = semantic;
+            this.program = program;
+            this.timings = timings;
+        }
+
+        public boolean isSuccess() {
+            return semantic != null && semantic.success;
+        }
+    }
+
+    // How long one stage took on how much input
+    public static class StageTiming {
+        public final String stage;
+        public final long nanos;
+        public final int chars;
+        public final int lines;
+
+        public StageTiming(String stage, long nanos, int chars, int lines) {
+            this.stage = stage;
+            this.nanos = nanos;
+            this.chars = chars;
+            this.lines = lines;
+        }
+
+        public double millis() { return nanos / 1e6; }
+        public double charsPerSecond() { return nanos == 0 ? 0 : chars * 1e9 / nanos; }
+        public double linesPerSecond() { return nanos == 0 ? 0 : lines * 1e9 / nanos; }
+    }
+
+    private final LexicalAnalyzer lexicalAnalyzer;
+    private final SyntaxAnalyzer syntaxAnalyzer;
+    private final SemanticAnalyzer semanticAnalyzer;
+    private final CodeGenerator codeGenerator;
+
+    public CompilerPipeline() {
+        this(new LexicalAnalyzer(), new SyntaxAnalyzer(), new SemanticAnalyzer());
+    }
+
+    public CompilerPipeline(LexicalAnalyzer lexicalAnalyzer,
+                            SyntaxAnalyzer syntaxAnalyzer,
+                            SemanticAnalyzer semanticAnalyzer) {
+        this(lexicalAnalyzer, syntaxAnalyzer, semanticAnalyzer, new CodeGenerator());
+    }
+
+    public CompilerPipeline(LexicalAnalyzer lexicalAnalyzer,
+                            SyntaxAnalyzer syntaxAnalyzer,
+                            SemanticAnalyzer semanticAnalyzer,
+                            CodeGenerator codeGenerator) {
+        this.lexicalAnalyzer = lexicalAnalyzer;
+        this.syntaxAnalyzer = syntaxAnalyzer;
+        this.semanticAnalyzer = semanticAnalyzer;
+        this.codeGenerator = codeGenerator;
+    }
+
+    public CodeGenerator getCodeGenerator() { return codeGenerator; }
+
+    public Result run(String code) {
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        Result result = runPass(code);
+        AnalysisEvents.commitPipeline(event, "Pipeline", code, result);
+        return result;
+    }
+
+    private Result runPass(String code) {
+        if (LexicalAnalyzer.isBlank(code)) {
+            return new Result(lexicalAnalyzer.analyze(code), null, null);
+        }
+
+        TokenBuffer tokens = new TokenBuffer(code, Math.max(16, code.length() / 8));
+        Pass pass = new Pass(code, tokens, true);
+
+        int lineStart = 0;
+        int lineNum = 0;
+        while (true) {
+            int newline = code.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? code.length() : newline;
+            lineNum++;
+            if ((lineNum & 1023) == 0) Cancellation.throwIfCancelled();
+            pass.line(code, lineStart, lineEnd, lineNum);
+            if (newline < 0) break;
+            lineStart = newline + 1;
+        }
+
+        return pass.finish(code);
+    }
+
+    // === RUN ALL ===
+    // The three analyzers one after another on the same snapshot of the code, timing each stage.
+    // Stops at the first stage that fails, just like clicking through the stages in the UI.
+    // If all of them pass, the declarations are compiled ("Codegen") and executed ("Run").
+    public Result runAll(String code) {
+        int chars = code == null ? 0 : code.length();
+        int lines = countLines(code);
+        List<StageTiming> timings = new ArrayList<>(5);
+
+        long start = System.nanoTime();
+        LexicalAnalyzer.Result lexical = lexicalAnalyzer.analyze(code);
+        timings.add(new StageTiming("Lexical", System.nanoTime() - start, chars, lines));
+        if (!lexical.success) {
+            return new Result(lexical, null, null, null, timings);
+        }
+
+        start = System.nanoTime();
+        SyntaxAnalyzer.Result syntax = syntaxAnalyzer.analyze(code);
+        timings.add(new StageTiming("Syntax", System.nanoTime() - start, chars, lines));
+        if (!syntax.success) {
+            return new Result(lexical, syntax, null, null, timings);
+        }
+
+        start = System.nanoTime();
+        SemanticAnalyzer.Result semantic = semanticAnalyzer.analyze(code);
+        timings.add(new StageTiming("Semantic", System.nanoTime() - start, chars, lines));
+        if (!semantic.success) {
+            return new Result(lexical, syntax, semantic, null, timings);
+        }
+
+        start = System.nanoTime();
+        List<byte[]> classFiles = codeGenerator.generate(semantic.symbols);
+        timings.add(new StageTiming("Codegen", System.nanoTime() - start, chars, lines));
+
+        start = System.nanoTime();
+        CodeGenerator.Program program = codeGenerator.load(classFiles);
+        timings.add(new StageTiming("Run", System.nanoTime() - start, chars, lines));
+        return new Result(lexical, syntax, semantic, program, timings);
+    }
+
+    private static int countLines(String code) {
+        if (code == null || code.isEmpty()) return 0;
+        int lines = 1;
+        for (int i = code.indexOf('\n'); i >= 0; i = code.indexOf('\n', i + 1)) lines++;
+        return lines;
+    }
+
+    // Everything the three stages collect while the lines go by.
+    // Also used by StreamingAnalyzer, which feeds it one decoded line at a time.
+    class Pass {
+        final Diagnostics lexicalErrors = new Diagnostics(lexicalAnalyzer.getMaxErrors());
+        final Diagnostics syntaxErrors = new Diagnostics(syntaxAnalyzer.getMaxErrors());
+        final Diagnostics semanticErrors = new Diagnostics(semanticAnalyzer.getMaxErrors());
+        final SymbolTable symbols;
+        final TokenBuffer tokens;
+        final SyntaxTree tree;
+        final SyntaxAnalyzer.Parser parser;
+        final ConstantFolder folder = new ConstantFolder();
+        final boolean keepTokens;
+        int checked = 0;   // statements of the tree that went through the Semantic check
+        boolean sawCode = false;
+
+        // Values that come from source are stored as offsets; anything else is copied into the table.
+        // Without keepTokens the tokens and the tree are dropped whenever no statement is open, or the
+        // open one is already known to be invalid, and the Results carry empty ones (StreamingAnalyzer
+        // does not keep the source either).
+        Pass(CharSequence source, TokenBuffer tokens, boolean keepTokens) {
+            this.symbols = new SymbolTable(source);
+            this.tokens = tokens;
+            this.tree = new SyntaxTree(tokens, Math.max(16, source.length() / 16));
+            this.parser = new SyntaxAnalyzer.Parser(tokens, tree, syntaxErrors);
+            this.keepTokens = keepTokens;
+        }
+
+        void line(CharSequence code, int start, int end, int lineNum) {
+            int first = tokens.size();
+            int errorsBefore = lexicalErrors.getCount();
+            lexicalAnalyzer.scanLine(code, start, end, lineNum, tokens, lexicalErrors);
+            if (tokens.size() > first || lexicalErrors.getCount() > errorsBefore) sawCode = true;
+
+            // A later stage only runs when the earlier ones passed (same as the UI flow),
+            // so once a stage has failed we stop doing the work for the stages after it.
+            if (lexicalErrors.isEmpty()) {
+                parser.advance(tokens.size());
+                checkStatements();
+            }
+            if (!keepTokens && (!hasOpenStatement() || parser.isPendingInvalid())) {
+                // Every statement in the tree went through checkStatements() (or never will)
+                if (hasOpenStatement()) parser.dropPending();
+                else parser.reset();
+                tokens.clear();
+                tree.clear();
+                checked = 0;
+            }
+        }
+
+        // A statement has begun but not ended yet
+        boolean hasOpenStatement() {
+            return lexicalErrors.isEmpty() && parser.hasPendingStatement();
+        }
+
+        // Without keepTokens: tokens are only held while an open statement may still be valid, and
+        // they point into the text of the lines it spans, so the caller has to keep that text
+        boolean holdsTokens() {
+            return !tokens.isEmpty();
+        }
+
+        private void checkStatements() {
+            if (syntaxErrors.isEmpty()) {
+                for (; checked < tree.statementCount(); checked++) {
+                    semanticAnalyzer.checkDeclaration(tree, tree.statement(checked), symbols, folder, semanticErrors);
+                }
+            }
+        }
+
+        Result finish(CharSequence code) {
+            // Nothing but whitespace: report it the same way the Lexer does
+            if (!sawCode) {
+                return new Result(lexicalAnalyzer.analyze(""), null, null);
+            }
+            if (lexicalErrors.isEmpty()) {
+                parser.finish();
+                checkStatements();
+            }
+            TokenBuffer resultTokens = keepTokens ? tokens : new TokenBuffer(code, 0);
+            LexicalAnalyzer.Result lexical = lexicalAnalyzer.toResult(code, resultTokens, lexicalErrors);
+            if (!lexical.success) {
+                return new Result(lexical, null, null);
+            }
+            SyntaxTree resultTree = keepTokens ? tree : new SyntaxTree(resultTokens, 0);
+            SyntaxAnalyzer.Result syntax = syntaxAnalyzer.toResult(resultTree, syntaxErrors);
+            if (!syntax.success) {
+                return new Result(lexical, syntax, null);
+            }
+            return new Result(lexical, syntax, semanticAnalyzer.toResult(symbols, semanticErrors));
+        }
+    }
+}
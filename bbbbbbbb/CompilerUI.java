@@ -15,6 +15,7 @@ public class CompilerUI {
     private LexicalAnalyzer lexicalAnalyzer;
     private SyntaxAnalyzer syntaxAnalyzer;
     private SemanticAnalyzer semanticAnalyzer;
+    private AnalysisExecutor analysisExecutor;
     
     private WindowController windowController;
     private UIComponents uiComponents;
@@ -26,6 +27,11 @@ public class CompilerUI {
         this.lexicalAnalyzer = new LexicalAnalyzer();
         this.syntaxAnalyzer = new SyntaxAnalyzer();
         this.semanticAnalyzer = new SemanticAnalyzer();
+        this.analysisExecutor = new AnalysisExecutor(javafx.application.Platform::runLater);
+        primaryStage.setOnHidden(e -> {
+            analysisExecutor.close();
+            if (eventHandlers != null) eventHandlers.stopWatching();
+        });
         
         primaryStage.initStyle(StageStyle.UNDECORATED);
         
@@ -75,7 +81,7 @@ public class CompilerUI {
         // Setup controllers
         windowController.setupKeyboardShortcuts(scene);
         eventHandlers = new EventHandlers(
-            appState, lexicalAnalyzer, syntaxAnalyzer, semanticAnalyzer,
+            appState, lexicalAnalyzer, syntaxAnalyzer, semanticAnalyzer, analysisExecutor,
             uiComponents, primaryStage
         );
         eventHandlers.setupAllHandlers();
@@ -0,0 +1,89 @@
+package com.tam.compiler;
+
+import java.util.Objects;
+
+/*
+ * The value of a declared variable, as ConstantFolder worked it out.
+ *
+ * Typed with a SymbolTable ordinal. byte, short, int and long keep their value in a long, and
+ * so do char (its code point) and boolean (0 or 1); float and double keep theirs in a double
+ * (a float is exactly representable as one); a String keeps its characters, quotes removed.
+ */
+public final class Constant {
+
+    public final byte type;
+    private final long integral;
+    private final double floating;
+    private final String string;
+
+    private Constant(byte type, long integral, double floating, String string) {
+        this.type = type;
+        this.integral = integral;
+        this.floating = floating;
+        this.string = string;
+    }
+
+    static Constant ofIntegral(byte type, long value) {
+        return new Constant(type, value, 0, null);
+    }
+
+    static Constant ofFloating(byte type, double value) {
+        return new Constant(type, 0, value, null);
+    }
+
+    static Constant ofString(String value) {
+        return new Constant(SymbolTable.STRING, 0, 0, value);
+    }
+
+    // From the way SymbolTable stores a value that is not a String: see bits()
+    static Constant ofBits(byte type, long bits) {
+        return isFloating(type) ? ofFloating(type, Double.longBitsToDouble(bits)) : ofIntegral(type, bits);
+    }
+
+    public boolean isFloating() { return isFloating(type); }
+
+    public long longValue() { return isFloating() ? (long) floating : integral; }
+    public double doubleValue() { return isFloating() ? floating : integral; }
+    public boolean booleanValue() { return integral != 0; }
+
+    // One long for any value but a String: the integral value, or the raw bits of the double
+    long bits() { return isFloating() ? Double.doubleToRawLongBits(floating) : integral; }
+
+    // The value as Java's string conversion writes it: 4096, 1.5, a, true, ...
+    @Override
+    public String toString() {
+        return toString(type, integral, floating, string);
+    }
+
+    static String toString(byte type, long integral, double floating, String string) {
+        switch (type) {
+            case SymbolTable.FLOAT:
+                return Float.toString((float) floating);
+            case SymbolTable.DOUBLE:
+                return Double.toString(floating);
+            case SymbolTable.CHAR:
+                return Character.toString((int) integral);
+            case SymbolTable.BOOLEAN:
+                return integral != 0 ? "true" : "false";
+            case SymbolTable.STRING:
+                return string;
+            default:
+                return Long.toString(integral);
+        }
+    }
+
+    static boolean isFloating(byte type) {
+        return type == SymbolTable.FLOAT || type == SymbolTable.DOUBLE;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Constant constant && constant.type == type && constant.integral == integral
+                && Double.compare(constant.floating, floating) == 0 && Objects.equals(constant.string, string);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, integral, floating, string);
+    }
+}
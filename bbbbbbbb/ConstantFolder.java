@@ -0,0 +1,404 @@
+package com.tam.compiler;
+
+import java.util.Arrays;
+
+/*
+ * Works out the value of an initializer at compile time, the way javac folds constant expressions.
+ *
+ * An initializer that is one literal and nothing else keeps the rules LiteralChecker always
+ * applied (a long may leave out its L, a float may be a whole number, ...). Anything else, an
+ * operator or the name of an earlier variable, is typed and evaluated like Java does it:
+ *  - a literal has its Java type: 5 is an int, 5L a long, 1.5f a float, 1.5 a double, 'a' a char
+ *  - a sign in front promotes byte, short and char to int
+ *  - + with a String on either side concatenates; any other operation promotes both operands to
+ *    the wider of int, long, float and double first, and int and long arithmetic wraps around
+ *  - a name stands for the value its declaration was folded to
+ *  - the result is assigned to the declared type: widening (byte -> short -> int -> long -> float
+ *    -> double, char -> int) always works, narrowing a byte, short, char or int into byte, short
+ *    or char only if the value fits
+ *
+ * One error per initializer, the first one found:
+ *  - NOT_DECLARED        a name no earlier declaration gave a value to, reported at the name
+ *  - DIVISION_BY_ZERO    an int or long division or remainder by zero
+ *  - VALUE_OUT_OF_RANGE  a result that does not fit the declared type (a float or double result
+ *                        that overflowed to Infinity or is NaN counts too, as such literals do)
+ *  - INVALID_VALUE       anything else: a bad literal, arithmetic on a boolean, an int for a String
+ *
+ * The nodes of an initializer are evaluated front to back (they are in postorder, see SyntaxTree)
+ * on a stack of primitive arrays, so nothing recurses and only the returned Constant (and the
+ * Strings of a concatenation) is allocated. The stack is reused: one instance per thread.
+ *
+ * Almost every initializer is a lone literal. Callers that keep a million of them only
+ * checkLiteral() those; SymbolTable then stores literalBits() without a Constant in between.
+ */
+final class ConstantFolder {
+
+    // Where the values of the variables declared so far come from
+    interface Scope {
+        // Pushes the value of the variable named text[start, end) onto folder's stack (see push());
+        // false if there is none (yet)
+        boolean push(ConstantFolder folder, CharSequence text, int start, int end);
+    }
+
+    // For initializers that use no names
+    static final Scope NO_NAMES = (folder, text, start, end) -> false;
+
+    // The variables of a table, read straight from their typed slots
+    static Scope scopeOf(SymbolTable symbols) {
+        return (folder, text, start, end) -> {
+            int index = symbols.find(text, start, end);
+            if (index < 0) return false;
+            byte type = symbols.type(index);
+            if (type == SymbolTable.STRING) folder.push(type, 0, 0, symbols.stringValue(index));
+            else if (Constant.isFloating(type)) folder.push(type, 0, symbols.doubleValue(index), null);
+            else folder.push(type, symbols.longValue(index), 0, null);
+            return true;
+        };
+    }
+
+    private static final int OK = 0;
+    private static final int INVALID = 1;
+    private static final int DIVIDED_BY_ZERO = 2;
+
+    // The operand stack, one slot per pushed value
+    private byte[] types = new byte[16];
+    private long[] integrals = new long[16];
+    private double[] floatings = new double[16];
+    private String[] strings = new String[16];
+    private int top;
+
+    // The value of the initializer rooted at node value, assigned to type.
+    // Null once the error has been added to errors.
+    Constant fold(SyntaxTree tree, int value, byte type, Scope scope, Diagnostics errors) {
+        TokenBuffer tokens = tree.getTokens();
+        CharSequence text = tokens.getSource();
+        if (isLiteral(tree, value)) {
+            if (!checkLiteral(tree, value, type, errors)) return null;
+            return literal(type, text, tree.sourceStart(value), tree.sourceEnd(value));
+        }
+
+        int first = firstNode(tree, value);
+        ensureCapacity(value - first + 1);
+        top = 0;
+        for (int node = first; node <= value; node++) {
+            int token = tree.token(node);
+            int start = tokens.start(token);
+            int end = tokens.end(token);
+            int status = OK;
+            switch (tree.kind(node)) {
+                case SyntaxTree.LITERAL -> status = pushLiteral(text, start, end);
+                case SyntaxTree.NAME -> {
+                    if (!scope.push(this, text, start, end)) {
+                        errors.add(Diagnostic.Code.NOT_DECLARED, tokens.line(token), tokens.column(token),
+                                   text.subSequence(start, end).toString());
+                        return null;
+                    }
+                }
+                case SyntaxTree.UNARY -> status = unary(text.charAt(start));
+                case SyntaxTree.BINARY -> status = binary(text.charAt(start));
+                default -> status = INVALID;     // MALFORMED
+            }
+            if (status == INVALID) return error(Diagnostic.Code.INVALID_VALUE, tree, value, type, errors);
+            if (status == DIVIDED_BY_ZERO) return error(Diagnostic.Code.DIVISION_BY_ZERO, tree, value, type, errors);
+        }
+        return assign(tree, value, type, errors);
+    }
+
+    // A literal and nothing else, not even parentheses
+    static boolean isLiteral(SyntaxTree tree, int value) {
+        return tree.kind(value) == SyntaxTree.LITERAL && tree.end(value) - tree.start(value) == 1;
+    }
+
+    // A lone literal is valid if LiteralChecker says so, INVALID_VALUE otherwise
+    static boolean checkLiteral(SyntaxTree tree, int value, byte type, Diagnostics errors) {
+        TokenBuffer tokens = tree.getTokens();
+        if (LiteralChecker.isValid(type, tokens.getSource(), tree.sourceStart(value), tree.sourceEnd(value))) return true;
+        int first = tree.start(value);
+        errors.add(Diagnostic.Code.INVALID_VALUE, tokens.line(first), tokens.column(first), tree.text(value),
+                   SymbolTable.nameOf(type));
+        return false;
+    }
+
+    // Does the initializer rooted at value refer to other variables?
+    static boolean hasNames(SyntaxTree tree, int value) {
+        for (int node = firstNode(tree, value); node <= value; node++) {
+            if (tree.kind(node) == SyntaxTree.NAME) return true;
+        }
+        return false;
+    }
+
+    // The first node of an expression in postorder is its leftmost leaf
+    static int firstNode(SyntaxTree tree, int value) {
+        int first = value;
+        while (tree.firstChild(first) >= 0) first = tree.firstChild(first);
+        return first;
+    }
+
+    // The value of a literal LiteralChecker accepted for type
+    static Constant literal(byte type, CharSequence text, int start, int end) {
+        if (type == SymbolTable.STRING) return Constant.ofString(text.subSequence(start + 1, end - 1).toString());
+        return Constant.ofBits(type, literalBits(type, text, start, end));
+    }
+
+    // The same for any type but String, as SymbolTable stores it (see Constant.bits()).
+    // Only a float or double literal allocates (the String their parsers need).
+    static long literalBits(byte type, CharSequence text, int start, int end) {
+        switch (type) {
+            case SymbolTable.LONG:
+                if (isSuffix(text.charAt(end - 1), 'l')) end--;
+                return Long.parseLong(text, start, end, 10);
+            case SymbolTable.FLOAT:
+                if (isSuffix(text.charAt(end - 1), 'f')) end--;
+                return Double.doubleToRawLongBits(Float.parseFloat(text.subSequence(start, end).toString()));
+            case SymbolTable.DOUBLE:
+                return Double.doubleToRawLongBits(Double.parseDouble(text.subSequence(start, end).toString()));
+            case SymbolTable.CHAR:
+                return Character.codePointAt(text, start + 1);
+            case SymbolTable.BOOLEAN:
+                return text.charAt(start) == 't' ? 1 : 0;
+            default:
+                return Long.parseLong(text, start, end, 10);
+        }
+    }
+
+    // === OPERANDS ===
+
+    // A literal inside an expression, typed by how it is written
+    private int pushLiteral(CharSequence text, int start, int end) {
+        char first = text.charAt(start);
+        char last = text.charAt(end - 1);
+        if (first == '"') {
+            push(SymbolTable.STRING, 0, 0, text.subSequence(start + 1, end - 1).toString());
+        } else if (first == '\'') {
+            if (!LiteralChecker.isValid(SymbolTable.CHAR, text, start, end)) return INVALID;
+            push(SymbolTable.CHAR, Character.codePointAt(text, start + 1), 0, null);
+        } else if (first == 't' || first == 'f') {
+            push(SymbolTable.BOOLEAN, first == 't' ? 1 : 0, 0, null);
+        } else if (isSuffix(last, 'l')) {
+            if (!LiteralChecker.isValid(SymbolTable.LONG, text, start, end)) return INVALID;
+            push(SymbolTable.LONG, Long.parseLong(text, start, end - 1, 10), 0, null);
+        } else if (isSuffix(last, 'f')) {
+            if (!LiteralChecker.isValid(SymbolTable.FLOAT, text, start, end)) return INVALID;
+            push(SymbolTable.FLOAT, 0, Float.parseFloat(text.subSequence(start, end - 1).toString()), null);
+        } else if (isSuffix(last, 'd') || contains(text, start, end, '.')) {
+            if (!LiteralChecker.isValid(SymbolTable.DOUBLE, text, start, end)) return INVALID;
+            push(SymbolTable.DOUBLE, 0, Double.parseDouble(text.subSequence(start, end).toString()), null);
+        } else {
+            if (!LiteralChecker.isValid(SymbolTable.INT, text, start, end)) return INVALID;
+            push(SymbolTable.INT, Integer.parseInt(text, start, end, 10), 0, null);
+        }
+        return OK;
+    }
+
+    void push(Constant constant) {
+        push(constant.type, constant.isFloating() ? 0 : constant.longValue(), constant.isFloating() ? constant.doubleValue() : 0,
+             constant.type == SymbolTable.STRING ? constant.toString() : null);
+    }
+
+    void push(byte type, long integral, double floating, String string) {
+        types[top] = type;
+        integrals[top] = integral;
+        floatings[top] = floating;
+        strings[top] = string;
+        top++;
+    }
+
+    // === OPERATORS ===
+
+    private int unary(char operator) {
+        int slot = top - 1;
+        byte type = promote(types[slot], SymbolTable.INT);
+        if (type < 0) return INVALID;
+        types[slot] = type;
+        if (operator == '-') {
+            if (type == SymbolTable.INT) integrals[slot] = -(int) integrals[slot];
+            else if (type == SymbolTable.LONG) integrals[slot] = -integrals[slot];
+            else floatings[slot] = -floatings[slot];
+        }
+        return OK;
+    }
+
+    // The result replaces the left operand
+    private int binary(char operator) {
+        int right = --top;
+        int left = right - 1;
+        if (operator == '+' && (types[left] == SymbolTable.STRING || types[right] == SymbolTable.STRING)) {
+            strings[left] = asString(left) + asString(right);
+            types[left] = SymbolTable.STRING;
+            return OK;
+        }
+
+        byte type = promote(types[left], types[right]);
+        if (type < 0) return INVALID;
+        switch (type) {
+            case SymbolTable.INT -> {
+                int a = (int) integrals[left];
+                int b = (int) integrals[right];
+                if ((operator == '/' || operator == '%') && b == 0) return DIVIDED_BY_ZERO;
+                integrals[left] = switch (operator) {
+                    case '+' -> a + b;
+                    case '-' -> a - b;
+                    case '*' -> a * b;
+                    case '/' -> a / b;
+                    default -> a % b;
+                };
+            }
+            case SymbolTable.LONG -> {
+                long a = integrals[left];
+                long b = integrals[right];
+                if ((operator == '/' || operator == '%') && b == 0) return DIVIDED_BY_ZERO;
+                integrals[left] = switch (operator) {
+                    case '+' -> a + b;
+                    case '-' -> a - b;
+                    case '*' -> a * b;
+                    case '/' -> a / b;
+                    default -> a % b;
+                };
+            }
+            case SymbolTable.FLOAT -> {
+                float a = asFloat(left);
+                float b = asFloat(right);
+                floatings[left] = switch (operator) {
+                    case '+' -> a + b;
+                    case '-' -> a - b;
+                    case '*' -> a * b;
+                    case '/' -> a / b;
+                    default -> a % b;
+                };
+            }
+            default -> {
+                double a = asDouble(left);
+                double b = asDouble(right);
+                floatings[left] = switch (operator) {
+                    case '+' -> a + b;
+                    case '-' -> a - b;
+                    case '*' -> a * b;
+                    case '/' -> a / b;
+                    default -> a % b;
+                };
+            }
+        }
+        types[left] = type;
+        return OK;
+    }
+
+    // Binary numeric promotion: the wider of int, long, float and double; -1 if either is not a number
+    private static byte promote(byte a, byte b) {
+        if (!isNumeric(a) || !isNumeric(b)) return -1;
+        if (a == SymbolTable.DOUBLE || b == SymbolTable.DOUBLE) return SymbolTable.DOUBLE;
+        if (a == SymbolTable.FLOAT || b == SymbolTable.FLOAT) return SymbolTable.FLOAT;
+        if (a == SymbolTable.LONG || b == SymbolTable.LONG) return SymbolTable.LONG;
+        return SymbolTable.INT;
+    }
+
+    private static boolean isNumeric(byte type) {
+        return type != SymbolTable.BOOLEAN && type != SymbolTable.STRING;
+    }
+
+    // Straight from the long, a detour through double could round twice
+    private float asFloat(int slot) {
+        return Constant.isFloating(types[slot]) ? (float) floatings[slot] : (float) integrals[slot];
+    }
+
+    private double asDouble(int slot) {
+        return Constant.isFloating(types[slot]) ? floatings[slot] : integrals[slot];
+    }
+
+    private String asString(int slot) {
+        return Constant.toString(types[slot], integrals[slot], floatings[slot], strings[slot]);
+    }
+
+    // === ASSIGNMENT ===
+
+    private Constant assign(SyntaxTree tree, int value, byte type, Diagnostics errors) {
+        byte from = types[0];
+        if (from == type && type == SymbolTable.STRING) return Constant.ofString(strings[0]);
+        if (from == SymbolTable.STRING || from == SymbolTable.BOOLEAN || type == SymbolTable.STRING
+                || type == SymbolTable.BOOLEAN) {
+            if (from == type) return Constant.ofIntegral(type, integrals[0]);
+            return error(Diagnostic.Code.INVALID_VALUE, tree, value, type, errors);
+        }
+
+        if (from == type || isWidening(from, type)) {
+            if (type == SymbolTable.FLOAT) {
+                float converted = asFloat(0);
+                if (Float.isFinite(converted)) return Constant.ofFloating(type, converted);
+            } else if (type == SymbolTable.DOUBLE) {
+                double converted = asDouble(0);
+                if (Double.isFinite(converted)) return Constant.ofFloating(type, converted);
+            } else {
+                return Constant.ofIntegral(type, integrals[0]);
+            }
+            return error(Diagnostic.Code.VALUE_OUT_OF_RANGE, tree, value, type, errors);
+        }
+
+        // Narrowing, only for a byte, short, char or int value that fits
+        if (Constant.isFloating(from) || from == SymbolTable.LONG) {
+            return error(Diagnostic.Code.INVALID_VALUE, tree, value, type, errors);
+        }
+        long result = integrals[0];
+        boolean fits = switch (type) {
+            case SymbolTable.BYTE -> result >= Byte.MIN_VALUE && result <= Byte.MAX_VALUE;
+            case SymbolTable.SHORT -> result >= Short.MIN_VALUE && result <= Short.MAX_VALUE;
+            default -> result >= Character.MIN_VALUE && result <= Character.MAX_VALUE;
+        };
+        if (!fits) return error(Diagnostic.Code.VALUE_OUT_OF_RANGE, tree, value, type, errors);
+        return Constant.ofIntegral(type, result);
+    }
+
+    // Widening primitive conversions (JLS 5.1.2)
+    private static boolean isWidening(byte from, byte to) {
+        switch (from) {
+            case SymbolTable.BYTE:
+                return to != SymbolTable.CHAR && to != SymbolTable.BYTE;
+            case SymbolTable.SHORT:
+            case SymbolTable.CHAR:
+                return to == SymbolTable.INT || to == SymbolTable.LONG || Constant.isFloating(to);
+            case SymbolTable.INT:
+                return to == SymbolTable.LONG || Constant.isFloating(to);
+            case SymbolTable.LONG:
+                return Constant.isFloating(to);
+            case SymbolTable.FLOAT:
+                return to == SymbolTable.DOUBLE;
+            default:
+                return false;
+        }
+    }
+
+    // Every error but NOT_DECLARED is about the whole initializer: reported at its start, quoting it
+    private Constant error(Diagnostic.Code code, SyntaxTree tree, int value, byte type, Diagnostics errors) {
+        TokenBuffer tokens = tree.getTokens();
+        int first = tree.start(value);
+        String text = tree.text(value);
+        if (code == Diagnostic.Code.VALUE_OUT_OF_RANGE) {
+            errors.add(code, tokens.line(first), tokens.column(first), text, asString(0), SymbolTable.nameOf(type));
+        } else if (code == Diagnostic.Code.DIVISION_BY_ZERO) {
+            errors.add(code, tokens.line(first), tokens.column(first), text);
+        } else {
+            errors.add(code, tokens.line(first), tokens.column(first), text, SymbolTable.nameOf(type));
+        }
+        return null;
+    }
+
+    // === HELPERS ===
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= types.length) return;
+        int size = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, size);
+        integrals = Arrays.copyOf(integrals, size);
+        floatings = Arrays.copyOf(floatings, size);
+        strings = Arrays.copyOf(strings, size);
+    }
+
+    private static boolean isSuffix(char c, char lower) {
+        return c == lower || c == Character.toUpperCase(lower);
+    }
+
+    private static boolean contains(CharSequence text, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package com.tam.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Builds large test sources out of the sample declaration files (test1_success.java, ExampleTest.java).
+ * Every generated line is a sample line with a unique variable name, so a clean corpus passes all stages.
+ * With an error rate above zero, that fraction of lines gets one lexical, syntax or semantic mistake.
+ */
+public class CorpusGenerator {
+
+    // TYPE | NAME | REST OF THE LINE
+    private static final Pattern SAMPLE_LINE = Pattern.compile("^(\\w+)\\s+(\\w+)(.*)$");
+
+    private final List<String[]> templates = new ArrayList<>();
+
+    public CorpusGenerator(List<Path> samples) throws IOException {
+        for (Path sample : samples) {
+            for (String line : Files.readAllLines(sample)) {
+                Matcher matcher = SAMPLE_LINE.matcher(line.trim());
+                if (matcher.matches()) {
+                    templates.add(new String[] { matcher.group(1), matcher.group(2), matcher.group(3) });
+                }
+            }
+        }
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("No declarations found in " + samples);
+        }
+    }
+
+    public String generate(int lineCount, double errorRate, long seed) {
+        Random random = new Random(seed);
+        StringBuilder code = new StringBuilder(lineCount * 24);
+
+        for (int i = 0; i < lineCount; i++) {
+            String[] template = templates.get(random.nextInt(templates.size()));
+            String type = template[0];
+            String name = template[1] + i;
+            String rest = template[2];
+
+            if (random.nextDouble() < errorRate) {
+                switch (random.nextInt(4)) {
+                    case 0 -> rest = rest.replace("=", "= @");                       // Lexical: unknown token
+                    case 1 -> rest = rest.substring(0, rest.lastIndexOf(';'));        // Syntax: missing semicolon
+                    case 2 -> name = "duplicate";                                     // Semantic: duplicate name
+                    default -> {                                                      // Semantic: bad value
+                        type = "byte";
+                        rest = " = 1000;";
+                    }
+                }
+            }
+
+            code.append(type).append(' ').append(name).append(rest).append('\n');
+        }
+        return code.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.tam.compiler;
+
+/*
+ * One error found by an analyzer.
+ *
+ * Only the facts are stored (what, where, and the few words to quote); the familiar
+ * "Line 3: Invalid value '1000' for type 'byte'" text is built by format() when somebody
+ * actually looks at it. A file with a million bad lines therefore costs a million small
+ * objects at most, never a million concatenated strings.
+ */
+public final class Diagnostic {
+
+    // Every error the analyzers can report, with the stage it belongs to and its message template
+    public enum Code {
+        INVALID_TOKEN("Lexical", "Invalid token '%s'"),
+        UNKNOWN_TOKEN("Lexical", "Unknown token '%s'"),
+        MISSING_SEMICOLON("Syntax", "Missing semicolon"),
+        INVALID_DECLARATION("Syntax", "Invalid declaration syntax"),
+        ALREADY_DECLARED("Semantic", "'%s' already declared."),
+        INVALID_VALUE("Semantic", "Invalid value '%s' for type '%s'"),
+        NOT_DECLARED("Semantic", "'%s' is not declared."),
+        VALUE_OUT_OF_RANGE("Semantic", "Value '%s' = %s is out of range for type '%s'"),
+        DIVISION_BY_ZERO("Semantic", "Division by zero in '%s'");
+
+        public final String stage;
+        private final String template;
+
+        Code(String stage, String template) {
+            this.stage = stage;
+            this.template = template;
+        }
+    }
+
+    private static final String[] NO_ARGS = new String[0];
+
+    public final Code code;
+    public final int line;      // 1-based
+    public final int column;    // 1-based, 0 if unknown
+    private final String[] args;
+
+    public Diagnostic(Code code, int line, int column, String... args) {
+        this.code = code;
+        this.line = line;
+        this.column = column;
+        this.args = args.length == 0 ? NO_ARGS : args;
+    }
+
+    public String getStage() { return code.stage; }
+    public int getArgCount() { return args.length; }
+    public String getArg(int index) { return args[index]; }
+
+    // The same Diagnostic somewhere else (IncrementalAnalyzer caches lines without their position)
+    Diagnostic atLine(int newLine) {
+        return newLine == line ? this : new Diagnostic(code, newLine, column, args);
+    }
+
+    // The message without its position, e.g. "Missing semicolon"
+    public String getMessage() {
+        return args.length == 0 ? code.template : String.format(code.template, (Object[]) args);
+    }
+
+    // The message as the analyzers always printed it, e.g. "Line 4: Missing semicolon"
+    public String format() {
+        return "Line " + line + ": " + getMessage();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
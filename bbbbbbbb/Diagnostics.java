@@ -0,0 +1,88 @@
+package com.tam.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Collects the Diagnostics of one stage, up to a maximum.
+ *
+ * Once the maximum is reached further errors are still counted (so "failed with 2,000,000
+ * errors" stays true) but no longer stored. The limit comes from -Dcompiler.maxErrors
+ * (default 1000) and can be changed per analyzer with setMaxErrors().
+ */
+public final class Diagnostics {
+
+    public static final int DEFAULT_MAX_ERRORS = Math.max(1, Integer.getInteger("compiler.maxErrors", 1000));
+
+    private final int limit;
+    private final List<Diagnostic> collected = new ArrayList<>();
+    private int count = 0;
+
+    public Diagnostics(int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        this.limit = limit;
+    }
+
+    // The Diagnostic is only created while there is room for it
+    public void add(Diagnostic.Code code, int line, int column, String... args) {
+        count++;
+        if (collected.size() < limit) collected.add(new Diagnostic(code, line, column, args));
+    }
+
+    // Same, with the one argument cut out of the source only while there is room: past the limit a
+    // file full of bad characters costs a count per error, not a String
+    public void add(Diagnostic.Code code, int line, int column, CharSequence source, int start, int end) {
+        count++;
+        if (collected.size() < limit) {
+            collected.add(new Diagnostic(code, line, column, source.subSequence(start, end).toString()));
+        }
+    }
+
+    public void add(Diagnostic diagnostic) {
+        count++;
+        if (collected.size() < limit) collected.add(diagnostic);
+    }
+
+    // A cached Diagnostic moved to its current line, again only copied while there is room
+    void addAtLine(Diagnostic diagnostic, int line) {
+        count++;
+        if (collected.size() < limit) collected.add(diagnostic.atLine(line));
+    }
+
+    // Append everything another collector saw (used to merge chunks and cached lines in line order)
+    public void addAll(Diagnostics other) {
+        for (Diagnostic diagnostic : other.collected) {
+            if (collected.size() >= limit) break;
+            collected.add(diagnostic);
+        }
+        count += other.count;
+    }
+
+    // Errors that are known to be there without being looked at, for a caller that stops once this is full
+    void addCount(int errors) {
+        count += errors;
+    }
+
+    public boolean isEmpty() { return count == 0; }
+    public int getCount() { return count; }
+    public int getLimit() { return limit; }
+    public boolean isFull() { return collected.size() >= limit; }
+    public List<Diagnostic> getCollected() { return Collections.unmodifiableList(collected); }
+
+    // === MESSAGE ===
+    // "<title>\n\nLine 1: ...\nLine 7: ..." with a note when some errors were only counted.
+    // Used by the Result classes, and only when the message is actually asked for.
+    static String formatMessage(String title, List<Diagnostic> diagnostics, int count) {
+        if (count == 0) return title;
+        StringBuilder message = new StringBuilder(title).append("\n\n");
+        for (int i = 0; i < diagnostics.size(); i++) {
+            if (i > 0) message.append('\n');
+            message.append(diagnostics.get(i).format());
+        }
+        if (count > diagnostics.size()) {
+            message.append("\n... and ").append(count - diagnostics.size()).append(" more error(s)");
+        }
+        return message.toString();
+    }
+}
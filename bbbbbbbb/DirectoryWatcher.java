@@ -0,0 +1,243 @@
+package com.tam.compiler;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+ * Watches a directory (and, if recursive, everything below it) and reports files that were
+ * written, so they can be analyzed again without anybody reloading them by hand.
+ * Used by HeadlessMain --watch and by the "Watch Folder" button. No JavaFX in here.
+ *
+ *  - Debounce: a save usually arrives as a burst (create, truncate, write, ...). A file is
+ *    reported once it has been quiet for debounceMillis (-Dcompiler.watchDebounceMs, default 50),
+ *    as changed if it exists by then and as deleted otherwise.
+ *  - The listener runs on a background pool, one file per task, so a slow file does not
+ *    hold up the others. The same file is never handed out twice at once: if it changes
+ *    while its listener is still running, it is reported again right after.
+ *  - New subdirectories are picked up; if the OS dropped events (OVERFLOW) every file is
+ *    reported again, since we no longer know which ones changed.
+ */
+public class DirectoryWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MS = Long.getLong("compiler.watchDebounceMs", 50L);
+
+    // Called on a pool thread
+    public interface Listener {
+        void changed(Path file);
+
+        default void deleted(Path file) {}
+    }
+
+    private final Path directory;
+    private final boolean recursive;
+    private final Predicate<Path> filter;
+    private final long debounceNanos;
+    private final Listener listener;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Map<Path, Long> pending = new LinkedHashMap<>();   // file -> report at (nanoTime)
+    private final ExecutorService workers;
+
+    // Files whose listener is running, and those that changed again meanwhile (guarded by this)
+    private final Set<Path> running = new HashSet<>();
+    private final Set<Path> rerun = new HashSet<>();
+
+    private volatile boolean closed = false;
+
+    // The same files the upload zone accepts, anywhere below directory
+    public DirectoryWatcher(Path directory, Listener listener) throws IOException {
+        this(directory, true, DirectoryWatcher::isSourceFile, DEFAULT_DEBOUNCE_MS, listener);
+    }
+
+    public DirectoryWatcher(Path directory, boolean recursive, Predicate<Path> filter,
+                            long debounceMillis, Listener listener) throws IOException {
+        this.directory = directory;
+        this.recursive = recursive;
+        this.filter = filter;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            register(directory);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "watch-analysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread watchThread = new Thread(this::watchLoop, "directory-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    public static boolean isSourceFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".java") || name.endsWith(".txt");
+    }
+
+    public Path getDirectory() { return directory; }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+        workers.shutdownNow();
+    }
+
+    // === WATCH THREAD ===
+
+    private void watchLoop() {
+        try {
+            while (!closed) {
+                long wait = nextDeadline() - System.nanoTime();
+                WatchKey key = pending.isEmpty() ? watchService.take()
+                                                 : watchService.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                // Drain everything that is already queued before deciding what is due
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();
+                }
+                dispatchDue();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // close() was called
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                scan(directory);
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE && Files.isDirectory(file)) {
+                // A new directory may already contain files by the time it is registered
+                if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    try {
+                        register(file);
+                        scan(file);
+                    } catch (IOException e) {
+                        // Gone again, or not readable: nothing to watch
+                    }
+                }
+                continue;
+            }
+            // Deletions are debounced too: editors often save by deleting and recreating the file
+            if (filter.test(file)) pending.put(file, System.nanoTime() + debounceNanos);
+        }
+        if (!key.reset()) keys.remove(key);
+    }
+
+    private long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (long deadline : pending.values()) next = Math.min(next, deadline);
+        return next;
+    }
+
+    private void dispatchDue() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() - now > 0) continue;
+            it.remove();
+            dispatch(entry.getKey());
+        }
+    }
+
+    // === WORKERS ===
+
+    private void dispatch(Path file) {
+        synchronized (this) {
+            if (!running.add(file)) {
+                rerun.add(file);
+                return;
+            }
+        }
+        try {
+            workers.execute(() -> runListener(file));
+        } catch (RejectedExecutionException e) {
+            // close() was called meanwhile
+        }
+    }
+
+    private void runListener(Path file) {
+        while (!closed) {
+            try {
+                // Decided when the listener runs, so a quick delete + recreate is just a change
+                if (Files.isRegularFile(file)) listener.changed(file);
+                else listener.deleted(file);
+            } catch (RuntimeException e) {
+                System.err.println("ERROR: watch listener failed for " + file + ": " + e);
+            }
+            synchronized (this) {
+                if (!rerun.remove(file)) {
+                    running.remove(file);
+                    return;
+                }
+            }
+        }
+    }
+
+    // === REGISTRATION ===
+
+    private void register(Path dir) throws IOException {
+        if (!recursive) {
+            registerOne(dir);
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path sub : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) registerOne(sub);
+        }
+    }
+
+    private void registerOne(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        keys.put(key, dir);
+    }
+
+    // Report every matching file below dir (after an overflow, or for a new directory)
+    private void scan(Path dir) {
+        try (Stream<Path> walk = recursive ? Files.walk(dir) : Files.list(dir)) {
+            long deadline = System.nanoTime() + debounceNanos;
+            walk.filter(Files::isRegularFile).filter(filter).forEach(file -> pending.put(file, deadline));
+        } catch (IOException e) {
+            // The directory went away meanwhile
+        }
+    }
+}
@@ -1,28 +1,51 @@
 package com.tam.compiler;
 
+import javafx.application.Platform;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.List;
 
 public class EventHandlers {
     private AppState appState;
     private LexicalAnalyzer lexicalAnalyzer;
     private SyntaxAnalyzer syntaxAnalyzer;
     private SemanticAnalyzer semanticAnalyzer;
+    private AnalysisExecutor analysisExecutor;
+    private CompilerPipeline pipeline;
+    private AnalysisCache analysisCache;
     private UIComponents uiComponents;
     private Stage primaryStage;
 
+    // Watch mode: null while no folder is watched. The log is newest first and only touched on the UI thread.
+    private static final int WATCH_LOG_SIZE = 200;
+    private static final int WATCH_ERRORS_SHOWN = 10;
+    private static final DateTimeFormatter WATCH_TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int PROGRAM_VALUES_SHOWN = 20;
+    private DirectoryWatcher directoryWatcher;
+    private final ArrayDeque<String> watchLog = new ArrayDeque<>();
+
     public EventHandlers(AppState appState, 
                         LexicalAnalyzer lexicalAnalyzer,
                         SyntaxAnalyzer syntaxAnalyzer, 
                         SemanticAnalyzer semanticAnalyzer,
+                        AnalysisExecutor analysisExecutor,
                         UIComponents uiComponents, 
                         Stage primaryStage) {
         this.appState = appState;
         this.lexicalAnalyzer = lexicalAnalyzer;
         this.syntaxAnalyzer = syntaxAnalyzer;
         this.semanticAnalyzer = semanticAnalyzer;
+        this.analysisExecutor = analysisExecutor;
+        this.pipeline = new CompilerPipeline(lexicalAnalyzer, syntaxAnalyzer, semanticAnalyzer);
+        this.analysisCache = new AnalysisCache(pipeline);
         this.uiComponents = uiComponents;
         this.primaryStage = primaryStage;
     }
@@ -69,6 +92,8 @@ public class EventHandlers {
         uiComponents.getLexicalStage().setOnMouseClicked(e -> handleLexicalAnalysis());
         uiComponents.getSyntaxStage().setOnMouseClicked(e -> handleSyntaxAnalysis());
         uiComponents.getSemanticStage().setOnMouseClicked(e -> handleSemanticAnalysis());
+        uiComponents.getRunAllButton().setOnAction(e -> handleRunAll());
+        uiComponents.getWatchButton().setOnAction(e -> handleWatch());
         uiComponents.getClearButton().setOnAction(e -> handleClear());
     }
 
@@ -96,10 +121,22 @@ public class EventHandlers {
 
     private void loadFile(File file) {
         if (file != null) {
+            analysisExecutor.cancel();
+            uiComponents.finishRunningStages("default");
             try {
+                // Reading and displaying are recorded separately so a JFR recording shows which one is slow
+                AnalysisEvents.FileLoad loadEvent = new AnalysisEvents.FileLoad();
+                loadEvent.begin();
                 String content = Files.readString(file.toPath());
+                AnalysisEvents.commitFileLoad(loadEvent, file.getPath(), file.length(), content);
+
+                AnalysisEvents.UiUpdate uiEvent = new AnalysisEvents.UiUpdate();
+                uiEvent.begin();
                 uiComponents.getCodeArea().setText(content);
+                AnalysisEvents.commitUiUpdate(uiEvent, "setText", content);
+
                 appState.setFileLoaded(true);
+                appState.setLoadedFile(file.toPath().toAbsolutePath().normalize());
                 uiComponents.setResultText("File loaded successfully!\n\nClick \"Lexical Analysis\" to begin.", false);
                 uiComponents.updateButtonStates(appState);
             } catch (Exception e) {
@@ -111,104 +148,285 @@ public class EventHandlers {
     private void handleLexicalAnalysis() {
         String code = uiComponents.getCodeArea().getText();
         uiComponents.setResultText("Performing Lexical Analysis\n\n", false);
+        uiComponents.finishRunningStages("default");   // a request still running is replaced
         uiComponents.setStageStatus("lexical", "running");
 
         // THREADING LOGIC:
-        // We run the analysis in a background thread (new Thread())
-        // This prevents the UI from freezing or becoming unresponsive while processing.
-        new Thread(() -> {
-            try {
-                // Artificial delay to simulate heavy processing (for visual effect)
-                Thread.sleep(1500);
-
-                // === UI UPDATES ===
-                // JavaFX does not allow background threads to update the UI directly
-                // We must use Platform.runLater() to push updates back to the Main Application Thread
-                javafx.application.Platform.runLater(() -> {
-                    LexicalAnalyzer.Result result = lexicalAnalyzer.analyze(code);
-                    
-                    if (result.success) {
-                        appState.setLexicalPassed(true);
-                        appState.setTokens(result.tokens);
-                        uiComponents.setStageStatus("lexical", "success");
-                    } else {
-                        // On Failure: Lock the app flow by setting HasError = true
-                        appState.setLexicalPassed(false);
-                        appState.setHasError(true);
-                        uiComponents.setStageStatus("lexical", "error");
-                    }
-                    
-                    uiComponents.setResultText(result.message, !result.success);
-                    uiComponents.updateButtonStates(appState);
-                });
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // The analysis runs on the AnalysisExecutor (a virtual thread), never on the JavaFX thread,
+        // so big files don't freeze the window. The callback below is delivered through
+        // Platform.runLater(), and only if no newer request replaced this one in the meantime.
+        // The first click analyzes all stages in one pass (AnalysisCache), later clicks on the
+        // same code are answered from the cache.
+        analysisExecutor.submit(() -> analysisCache.analyze(code).lexical, result -> {
+            if (result.success) {
+                appState.setLexicalPassed(true);
+                appState.setTokens(result.tokens);
+                uiComponents.setStageStatus("lexical", "success");
+            } else {
+                // On Failure: Lock the app flow by setting HasError = true
+                appState.setLexicalPassed(false);
+                appState.setHasError(true);
+                uiComponents.setStageStatus("lexical", "error");
             }
-        }).start();
+
+            uiComponents.setResultText(result.getMessage(), !result.success);
+            uiComponents.updateButtonStates(appState);
+        }, error -> handleAnalysisError("lexical", error));
     }
 
     private void handleSyntaxAnalysis() {
         String code = uiComponents.getCodeArea().getText();
         uiComponents.setResultText("Performing Syntax Analysis\n\n", false);
+        uiComponents.finishRunningStages("default");
         uiComponents.setStageStatus("syntax", "running");
 
-        new Thread(() -> {
-            try {
-                Thread.sleep(1500);
-                
-                javafx.application.Platform.runLater(() -> {
-                    SyntaxAnalyzer.Result result = syntaxAnalyzer.analyze(code);
-                    
-                    if (result.success) {
-                        appState.setSyntaxPassed(true);
-                        uiComponents.setStageStatus("syntax", "success");
-                    } else {
-                        appState.setSyntaxPassed(false);
-                        appState.setHasError(true);
-                        uiComponents.setStageStatus("syntax", "error");
-                    }
-                    
-                    uiComponents.setResultText(result.message, !result.success);
-                    uiComponents.updateButtonStates(appState);
-                });
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        analysisExecutor.submit(() -> {
+            // The pipeline skips Syntax when Lexical failed; the button is disabled then, but be safe
+            SyntaxAnalyzer.Result syntax = analysisCache.analyze(code).syntax;
+            return syntax != null ? syntax : syntaxAnalyzer.analyze(code);
+        }, result -> {
+            if (result.success) {
+                appState.setSyntaxPassed(true);
+                uiComponents.setStageStatus("syntax", "success");
+            } else {
+                appState.setSyntaxPassed(false);
+                appState.setHasError(true);
+                uiComponents.setStageStatus("syntax", "error");
             }
-        }).start();
+
+            uiComponents.setResultText(result.getMessage(), !result.success);
+            uiComponents.updateButtonStates(appState);
+        }, error -> handleAnalysisError("syntax", error));
     }
 
     private void handleSemanticAnalysis() {
         String code = uiComponents.getCodeArea().getText();
         uiComponents.setResultText("Performing Semantic Analysis\n\n", false);
+        uiComponents.finishRunningStages("default");
         uiComponents.setStageStatus("semantic", "running");
 
-        new Thread(() -> {
-            try {
-                Thread.sleep(1500);
-                
-                javafx.application.Platform.runLater(() -> {
-                    SemanticAnalyzer.Result result = semanticAnalyzer.analyze(code);
-                    
-                    if (result.success) {
-                        appState.setSemanticPassed(true);
-                        appState.setVariables(result.variables);
-                        uiComponents.setStageStatus("semantic", "success");
-                    } else {
-                        appState.setSemanticPassed(false);
-                        appState.setHasError(true);
-                        uiComponents.setStageStatus("semantic", "error");
-                    }
-                    
-                    uiComponents.setResultText(result.message, !result.success);
-                    uiComponents.updateButtonStates(appState);
-                });
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        analysisExecutor.submit(() -> {
+            SemanticAnalyzer.Result semantic = analysisCache.analyze(code).semantic;
+            return semantic != null ? semantic : semanticAnalyzer.analyze(code);
+        }, result -> {
+            if (result.success) {
+                appState.setSemanticPassed(true);
+                appState.setVariables(result.variables);
+                uiComponents.setStageStatus("semantic", "success");
+            } else {
+                appState.setSemanticPassed(false);
+                appState.setHasError(true);
+                uiComponents.setStageStatus("semantic", "error");
             }
-        }).start();
+
+            uiComponents.setResultText(result.getMessage(), !result.success);
+            uiComponents.updateButtonStates(appState);
+        }, error -> handleAnalysisError("semantic", error));
+    }
+
+    private void handleRunAll() {
+        // One snapshot of the code for all three stages
+        String code = uiComponents.getCodeArea().getText();
+        uiComponents.setResultText("Performing Lexical, Syntax and Semantic Analysis\n\n", false);
+        uiComponents.setStageStatus("lexical", "running");
+        uiComponents.setStageStatus("syntax", "running");
+        uiComponents.setStageStatus("semantic", "running");
+
+        analysisExecutor.submit(() -> {
+            // Always really run (the point is the timings), but keep the result for the stage buttons
+            CompilerPipeline.Result all = pipeline.runAll(code);
+            analysisCache.put(code, all);
+            return all;
+        }, result -> {
+            String message = applyPipelineResult(result);
+            if (result.program != null) message += "\n\n" + formatProgram(result);
+            uiComponents.setResultText(message + "\n\n" + formatTimings(result.timings), !result.isSuccess());
+            uiComponents.updateButtonStates(appState);
+        }, error -> handleAnalysisError(null, error));
+    }
+
+    // Replay the outcome stage by stage, exactly as if each one had been clicked.
+    // Returns the message of the last stage that ran (the only one that is built).
+    private String applyPipelineResult(CompilerPipeline.Result result) {
+        appState.setLexicalPassed(result.lexical.success);
+        uiComponents.setStageStatus("lexical", result.lexical.success ? "success" : "error");
+        if (result.lexical.success) appState.setTokens(result.lexical.tokens);
+
+        if (result.syntax != null) {
+            appState.setSyntaxPassed(result.syntax.success);
+            uiComponents.setStageStatus("syntax", result.syntax.success ? "success" : "error");
+        } else {
+            uiComponents.setStageStatus("syntax", "default");
+        }
+        if (result.semantic != null) {
+            appState.setSemanticPassed(result.semantic.success);
+            uiComponents.setStageStatus("semantic", result.semantic.success ? "success" : "error");
+            if (result.semantic.success) appState.setVariables(result.semantic.variables);
+        } else {
+            uiComponents.setStageStatus("semantic", "default");
+        }
+
+        appState.setProgram(result.program);
+        if (!result.isSuccess()) appState.setHasError(true);
+
+        return result.semantic != null ? result.semantic.getMessage()
+             : result.syntax != null ? result.syntax.getMessage()
+             : result.lexical.getMessage();
+    }
+
+    // The compiled program after it ran: its size, and the first values read back from its fields
+    private String formatProgram(CompilerPipeline.Result result) {
+        CodeGenerator.Program program = result.program;
+        SymbolTable symbols = result.semantic.symbols;
+        StringBuilder text = new StringBuilder(String.format("Program: %,d variable(s) in %d class(es), %,d bytes",
+                symbols.size(), program.classes.size(), program.classBytes));
+        if (program.cachedClasses > 0) text.append(" (").append(program.cachedClasses).append(" cached)");
+        int shown = Math.min(symbols.size(), PROGRAM_VALUES_SHOWN);
+        for (int i = 0; i < shown; i++) {
+            String name = symbols.name(i);
+            text.append("\n  ").append(symbols.typeName(i)).append(' ').append(name).append(" = ").append(program.get(name));
+        }
+        if (symbols.size() > shown) text.append("\n  ... and ").append(symbols.size() - shown).append(" more");
+        return text.toString();
+    }
+
+    // Wall-clock time and throughput of every stage that ran
+    private String formatTimings(java.util.List<CompilerPipeline.StageTiming> timings) {
+        StringBuilder text = new StringBuilder("Timing:");
+        for (CompilerPipeline.StageTiming timing : timings) {
+            text.append(String.format("%n  %-9s %9.2f ms  %,14.0f chars/s  %,12.0f lines/s",
+                    timing.stage, timing.millis(), timing.charsPerSecond(), timing.linesPerSecond()));
+        }
+        return text.toString();
+    }
+
+    // An analyzer crashed (a bug, not a compile error in the user's code). With no stage (Run All)
+    // every card still running shows the error.
+    private void handleAnalysisError(String stage, Throwable error) {
+        appState.setHasError(true);
+        if (stage != null) uiComponents.setStageStatus(stage, "error");
+        uiComponents.finishRunningStages(stage != null ? "default" : "error");
+        uiComponents.setResultText("ERROR: Analysis failed unexpectedly!\n\n" + error, true);
+        uiComponents.updateButtonStates(appState);
+    }
+
+    // ==================== Watch Mode ====================
+    // A watched folder is analyzed again file by file as generators rewrite it. Every save adds a
+    // PASS/FAIL entry to the log in the result panel; if the saved file is the one open in the
+    // editor, it is reloaded and its stages are updated as after Run All.
+    private void handleWatch() {
+        if (directoryWatcher != null) {
+            stopWatching();
+            logWatch("Stopped watching");
+            return;
+        }
+
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Watch Folder");
+        File dir = chooser.showDialog(primaryStage);
+        if (dir == null) return;
+
+        Path root = dir.toPath().toAbsolutePath().normalize();
+        try {
+            directoryWatcher = new DirectoryWatcher(root, new DirectoryWatcher.Listener() {
+                @Override
+                public void changed(Path file) {
+                    reanalyze(root, file);
+                }
+
+                @Override
+                public void deleted(Path file) {
+                    Platform.runLater(() -> logWatch("GONE " + root.relativize(file)));
+                }
+            });
+        } catch (IOException e) {
+            uiComponents.setResultText("ERROR: Failed to watch folder!\n\n" + e.getMessage(), true);
+            return;
+        }
+        watchLog.clear();
+        uiComponents.setWatching(true);
+        logWatch("Watching " + root + " for changes");
+    }
+
+    public void stopWatching() {
+        if (directoryWatcher == null) return;
+        directoryWatcher.close();
+        directoryWatcher = null;
+        uiComponents.setWatching(false);
+    }
+
+    // On the watcher's pool: read and analyze here, only the outcome goes to the UI thread.
+    // The cache means clicking a stage afterwards costs nothing.
+    private void reanalyze(Path root, Path file) {
+        String name = root.relativize(file).toString();
+        String code;
+        try {
+            code = Files.readString(file);
+        } catch (IOException e) {
+            Platform.runLater(() -> logWatch("FAIL " + name + "\n  Failed to read file: " + e.getMessage()));
+            return;
+        }
+        CompilerPipeline.Result result = analysisCache.analyze(code);
+
+        Platform.runLater(() -> {
+            if (directoryWatcher == null) return;   // stopped meanwhile
+            if (file.equals(appState.getLoadedFile())) reloadOpenFile(file, code, result);
+            logWatch(formatWatchStatus(name, result));
+        });
+    }
+
+    private void reloadOpenFile(Path file, String code, CompilerPipeline.Result result) {
+        analysisExecutor.cancel();
+        if (!uiComponents.getCodeArea().getText().equals(code)) uiComponents.getCodeArea().setText(code);
+        appState.reset();
+        appState.setFileLoaded(true);
+        appState.setLoadedFile(file);
+        applyPipelineResult(result);
+        uiComponents.updateButtonStates(appState);
+    }
+
+    private String formatWatchStatus(String name, CompilerPipeline.Result result) {
+        if (result.isSuccess()) return "PASS " + name;
+
+        // Same shape as HeadlessMain: the first stage that failed, with a few of its errors
+        String title;
+        List<Diagnostic> diagnostics;
+        int errorCount;
+        if (!result.lexical.success) {
+            title = result.lexical.getTitle();
+            diagnostics = result.lexical.diagnostics;
+            errorCount = result.lexical.errorCount;
+        } else if (!result.syntax.success) {
+            title = result.syntax.getTitle();
+            diagnostics = result.syntax.diagnostics;
+            errorCount = result.syntax.errorCount;
+        } else {
+            title = result.semantic.getTitle();
+            diagnostics = result.semantic.diagnostics;
+            errorCount = result.semantic.errorCount;
+        }
+
+        StringBuilder text = new StringBuilder("FAIL ").append(name).append(" (").append(title).append(")");
+        int shown = Math.min(diagnostics.size(), WATCH_ERRORS_SHOWN);
+        for (int i = 0; i < shown; i++) {
+            text.append("\n  ").append(diagnostics.get(i).format());
+        }
+        if (errorCount > shown) text.append("\n  ... and ").append(errorCount - shown).append(" more error(s)");
+        return text.toString();
+    }
+
+    // UI thread only
+    private void logWatch(String entry) {
+        watchLog.addFirst(LocalTime.now().format(WATCH_TIME) + "  " + entry);
+        while (watchLog.size() > WATCH_LOG_SIZE) watchLog.removeLast();
+
+        String latest = watchLog.peekFirst();
+        uiComponents.setResultText("Watch Log\n\n" + String.join("\n", watchLog), latest.contains("  FAIL "));
     }
 
     private void handleClear() {
+        // Whatever is still running belongs to the old code
+        analysisExecutor.cancel();
         uiComponents.getCodeArea().clear();
         uiComponents.setResultText("Welcome! Load a Java file to start compilation analysis.", false);
 
@@ -0,0 +1,319 @@
+package com.tam.compiler;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/*
+ * Command-line entry point for CI: analyzes files and whole directory trees without a GUI.
+ * This class must never touch JavaFX (not even Main, which extends Application),
+ * so starting it stays cheap and works on machines without a display.
+ *
+ * Usage: java com.tam.compiler.HeadlessMain [--quiet] [--index FILE] [--watch] <file | directory | -> ...
+ *   -             read one document from stdin
+ *   --quiet       only print failures and the summary
+ *   --index FILE  remember results in FILE (see AnalysisIndex) and skip files that did not
+ *                 change since the run that wrote it
+ *   --watch       after the first run, keep watching the inputs (see DirectoryWatcher) and
+ *                 print a new PASS/FAIL line whenever a file is saved; stop with Ctrl+C
+ * Set -Dcompiler.maxErrors=N to print at most N errors per failing file (default 1000).
+ *
+ * Exit code: 0 = every file passed, 1 = at least one file failed, 2 = bad usage.
+ */
+public class HeadlessMain {
+
+    // Files bigger than this are streamed from disk instead of being read into a String
+    private static final long STREAMING_THRESHOLD = 64L * 1024 * 1024;
+
+    private static final String USAGE =
+            "Usage: java com.tam.compiler.HeadlessMain [--quiet] [--index FILE] [--watch] <file | directory | -> ...";
+
+    // What we report for one input
+    static class FileReport {
+        final String name;
+        final AnalysisIndex.Entry summary;   // null if the file could not be read or analyzed
+        final String error;                  // why, in that case
+        final boolean unchanged;             // taken from the index, not analyzed again
+
+        FileReport(String name, AnalysisIndex.Entry summary, String error, boolean unchanged) {
+            this.name = name;
+            this.summary = summary;
+            this.error = error;
+            this.unchanged = unchanged;
+        }
+
+        boolean passed() { return summary != null && summary.passed(); }
+    }
+
+    // An input handed to the workers, and the name to report it under should its analysis fail
+    private record Pending(String name, Future<FileReport> report) {}
+
+    private final CompilerPipeline pipeline = new CompilerPipeline();
+    private final StreamingAnalyzer streamingAnalyzer = new StreamingAnalyzer(pipeline, StreamingAnalyzer.DEFAULT_WINDOW_SIZE);
+    private final PrintStream out;
+    private final boolean quiet;
+    private final AnalysisIndex index;   // null without --index
+
+    HeadlessMain(PrintStream out, boolean quiet) {
+        this(out, quiet, null);
+    }
+
+    HeadlessMain(PrintStream out, boolean quiet, AnalysisIndex index) {
+        this.out = out;
+        this.quiet = quiet;
+        this.index = index;
+    }
+
+    public static void main(String[] args) {
+        List<String> inputs = new ArrayList<>();
+        boolean quiet = false;
+        boolean watch = false;
+        Path indexFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quiet")) quiet = true;
+            else if (args[i].equals("--watch")) watch = true;
+            else if (args[i].equals("--index") && i + 1 < args.length) indexFile = Path.of(args[++i]);
+            else inputs.add(args[i]);
+        }
+
+        if (inputs.isEmpty() || watch && inputs.contains("-")) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        AnalysisIndex index = null;
+        if (indexFile != null) {
+            try {
+                index = AnalysisIndex.open(indexFile);
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to open index: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        HeadlessMain main = new HeadlessMain(System.out, quiet, index);
+        int exitCode = main.run(inputs);
+        if (watch && exitCode != 2) exitCode = main.watch(inputs);
+        System.exit(exitCode);
+    }
+
+    int run(List<String> inputs) {
+        int passed = 0;
+        int failed = 0;
+        int unchanged = 0;
+
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            // Every input goes to the workers first, so "HeadlessMain *.java" keeps them all busy
+            List<Pending> reports = new ArrayList<>();
+            for (String input : inputs) {
+                if (input.equals("-")) {
+                    reports.add(new Pending("<stdin>", workers.submit(() -> analyzeStdin())));
+                } else {
+                    for (Path file : collectFiles(Path.of(input))) {
+                        reports.add(new Pending(file.toString(), workers.submit(() -> analyzeFile(file))));
+                    }
+                }
+            }
+
+            // Print in a stable (input, then path) order while the rest are still being analyzed
+            for (Pending pending : reports) {
+                FileReport report = await(pending);
+                print(report);
+                if (report.passed()) passed++;
+                else failed++;
+                if (report.unchanged) unchanged++;
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 2;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        saveIndex();
+
+        out.println();
+        out.println((passed + failed) + " file(s): " + passed + " passed, " + failed + " failed"
+                + (index != null ? ", " + unchanged + " unchanged" : ""));
+        return failed == 0 ? 0 : 1;
+    }
+
+    // An analysis that threw (an analyzer bug, or an Error such as OutOfMemoryError on a huge file)
+    // fails its own input only: the other reports, the summary and the index are still written
+    private static FileReport await(Pending pending) throws InterruptedException {
+        try {
+            return pending.report().get();
+        } catch (ExecutionException e) {
+            return new FileReport(pending.name(), null, "Failed to analyze file: " + e.getCause(), false);
+        }
+    }
+
+    // Runs until the process is stopped. Directories are watched recursively; a single file
+    // through its parent directory. Reports are printed as they come in, in no particular order.
+    int watch(List<String> inputs) {
+        List<DirectoryWatcher> watchers = new ArrayList<>();
+        DirectoryWatcher.Listener listener = new DirectoryWatcher.Listener() {
+            @Override
+            public void changed(Path file) {
+                print(analyzeFile(file));
+            }
+
+            @Override
+            public void deleted(Path file) {
+                if (!quiet) printLine("GONE " + file);
+            }
+        };
+        try {
+            for (String input : inputs) {
+                Path path = Path.of(input);
+                if (Files.isDirectory(path)) {
+                    watchers.add(new DirectoryWatcher(path, listener));
+                } else {
+                    Path parent = path.toAbsolutePath().getParent();
+                    Path file = parent.resolve(path.getFileName());
+                    watchers.add(new DirectoryWatcher(parent, false, file::equals,
+                            DirectoryWatcher.DEFAULT_DEBOUNCE_MS, listener));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Failed to watch: " + e.getMessage());
+            watchers.forEach(DirectoryWatcher::close);
+            return 2;
+        }
+
+        // Ctrl+C: stop watching, and keep what was learned meanwhile
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watchers.forEach(DirectoryWatcher::close);
+            saveIndex();
+        }));
+        printLine("");
+        printLine("Watching " + inputs.size() + " input(s) for changes (Ctrl+C to stop)");
+
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 2;
+    }
+
+    private void saveIndex() {
+        if (index == null) return;
+        try {
+            index.save();
+        } catch (IOException e) {
+            System.err.println("ERROR: Failed to save index: " + e.getMessage());
+        }
+    }
+
+    // A single file is taken as-is; directories are walked for the same files the UI accepts
+    private List<Path> collectFiles(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            return List.of(input);
+        }
+        try (Stream<Path> walk = Files.walk(input)) {
+            return walk.filter(Files::isRegularFile)
+                       .filter(DirectoryWatcher::isSourceFile)
+                       .sorted()
+                       .toList();
+        }
+    }
+
+    FileReport analyzeFile(Path file) {
+        String name = file.toString();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            String key = index == null ? name : file.toAbsolutePath().normalize().toString();
+            AnalysisIndex.Entry known = index == null ? null : index.get(key);
+
+            // Same size and mtime as last time: the file is not even opened
+            if (known != null && known.size == attributes.size() && known.modified == modified) {
+                return new FileReport(name, known, null, true);
+            }
+
+            if (attributes.size() > STREAMING_THRESHOLD) {
+                // Not hashed: that would mean reading the whole file up front.
+                // A streamed file is analyzed again whenever its mtime moves.
+                CompilerPipeline.Result result = streamingAnalyzer.analyze(file);
+                return analyzed(name, AnalysisIndex.toEntry(key, attributes.size(), modified, 0, result));
+            }
+
+            AnalysisEvents.FileLoad loadEvent = new AnalysisEvents.FileLoad();
+            loadEvent.begin();
+            byte[] bytes = Files.readAllBytes(file);
+            // Strict decoding, like Files.readString: malformed input is a read error
+            String code = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
+            AnalysisEvents.commitFileLoad(loadEvent, name, bytes.length, code);
+
+            long hash = index == null ? 0 : AnalysisIndex.contentHash(bytes);
+            // Touched or rewritten, but the same bytes: keep the result, remember the new mtime
+            if (known != null && known.size == bytes.length && known.contentHash == hash && hash != 0) {
+                index.put(known.withModified(modified));
+                return new FileReport(name, known, null, true);
+            }
+            return analyzed(name, AnalysisIndex.toEntry(key, bytes.length, modified, hash, pipeline.run(code)));
+        } catch (IOException e) {
+            return new FileReport(name, null, "Failed to read file: " + e.getMessage(), false);
+        }
+    }
+
+    private FileReport analyzed(String name, AnalysisIndex.Entry summary) {
+        if (index != null) index.put(summary);
+        return new FileReport(name, summary, null, false);
+    }
+
+    private FileReport analyzeStdin() {
+        try {
+            String code = new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+            AnalysisIndex.Entry summary = AnalysisIndex.toEntry("<stdin>", code.length(), 0, 0, pipeline.run(code));
+            return new FileReport("<stdin>", summary, null, false);
+        } catch (IOException e) {
+            return new FileReport("<stdin>", null, "Failed to read stdin: " + e.getMessage(), false);
+        }
+    }
+
+    // Synchronized: in watch mode reports arrive from several pool threads
+    private synchronized void printLine(String line) {
+        out.println(line);
+    }
+
+    private synchronized void print(FileReport report) {
+        if (report.summary == null) {
+            out.println("FAIL " + report.name);
+            out.println("  " + report.error);
+            return;
+        }
+        if (report.passed()) {
+            if (!quiet) out.println("PASS " + report.name);
+            return;
+        }
+
+        // The pipeline stops at the first stage that fails, so the summary holds its errors
+        AnalysisIndex.Entry summary = report.summary;
+        List<Diagnostic> diagnostics = summary.diagnostics;
+        out.println("FAIL " + report.name + " (" + summary.title + ")");
+        for (Diagnostic diagnostic : diagnostics) {
+            out.println("  " + diagnostic.format());
+        }
+        if (summary.errorCount > diagnostics.size()) {
+            out.println("  ... and " + (summary.errorCount - diagnostics.size()) + " more error(s)");
+        }
+    }
+}
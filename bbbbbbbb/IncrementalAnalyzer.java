@@ -0,0 +1,756 @@
+package com.tam.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+ * Keeps the analysis of a document up to date while it is being edited.
+ *
+ * Every line is lexed on its own (tokens, lexical errors) and cached by its CONTENT, so an
+ * unchanged or repeated line is never re-lexed. Statements may run over several lines, so
+ * parsing works on segments instead: runs of lines that end with a line whose last token
+ * is ';', after which no statement can still be open. Almost every segment is one line.
+ * A segment's parse (syntax errors, declarations, the values folded from initializers that use
+ * no names) is cached by its text too.
+ * The rules across segments are the duplicate declaration check and the values of the names
+ * an initializer uses; for those we keep a symbol table (name -> declarations, and the
+ * declarations whose values use the name) that is patched for the edited segments only. A value
+ * that uses names is folded again only when the declaration one of those names refers to, or its
+ * value, changes.
+ *
+ * After an edit only the dirty lines are re-lexed and only the segments around them
+ * re-parsed. An edit that adds or removes lines does not renumber the lines after it: their
+ * positions are fixed up when one of them is asked for (see indexOf()).
+ * Building the final Result (error messages, token buffer, syntax tree) is still a walk over
+ * the document, but it is plain copying with no lexing or validation, done only when asked for
+ * and kept until the next edit. getDiagnostics() stops walking once it has all it can keep.
+ *
+ * Every edit and every getResult() is recorded as a JFR event (see AnalysisEvents).
+ *
+ * Not thread-safe: use one instance per document from a single thread.
+ */
+public class IncrementalAnalyzer {
+
+    // The tokens of one line, independent of where the line sits in the file.
+    // Diagnostics are stored at line 0 and moved to the real line number when the Result is built.
+    static class LineAnalysis {
+        final String text;
+        final TokenBuffer tokens;
+        final Diagnostics lexicalErrors;
+        SegmentAnalysis alone;   // the line parsed as a segment of its own, once that was needed
+
+        LineAnalysis(String text, TokenBuffer tokens, Diagnostics lexicalErrors) {
+            this.text = text;
+            this.tokens = tokens;
+            this.lexicalErrors = lexicalErrors;
+        }
+
+        boolean isBlank() { return tokens.isEmpty() && lexicalErrors.isEmpty(); }
+    }
+
+    // One declarator of a segment. Lines count from the segment's first line (0), offsets from its text.
+    // A value that uses no names is checked once, here (constant, or the error; a lone literal only
+    // gets its constant when a user asks, see valueOf()). One that uses names depends on where the
+    // segment is, and is folded per Declared.
+    static class Declaration {
+        final byte type;
+        final String name;
+        final int nameLine, nameColumn, nameStart, nameEnd;
+        final int value, valueStart, valueEnd;   // the initializer's node in the segment's tree, its text
+        final String[] names;                    // the variables the value uses, each once
+        Constant constant;
+        final Diagnostic error;
+
+        Declaration(byte type, String name, int nameLine, int nameColumn, int nameStart, int nameEnd,
+                    int value, int valueStart, int valueEnd, String[] names, Constant constant, Diagnostic error) {
+            this.type = type;
+            this.name = name;
+            this.nameLine = nameLine;
+            this.nameColumn = nameColumn;
+            this.nameStart = nameStart;
+            this.nameEnd = nameEnd;
+            this.value = value;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
+            this.names = names;
+            this.constant = constant;
+            this.error = error;
+        }
+    }
+
+    // The parse of a run of lines, independent of where the run sits in the file.
+    // Only done when the lines lexed cleanly; declarations only when they also parsed cleanly.
+    static class SegmentAnalysis {
+        final TokenBuffer tokens;   // over the segment's text, line numbers as above
+        final SyntaxTree tree;
+        final Diagnostics syntaxErrors;
+        final Declaration[] declarations;
+
+        SegmentAnalysis(TokenBuffer tokens, SyntaxTree tree, Diagnostics syntaxErrors, Declaration[] declarations) {
+            this.tokens = tokens;
+            this.tree = tree;
+            this.syntaxErrors = syntaxErrors;
+            this.declarations = declarations;
+        }
+    }
+
+    // A line in the document: its position (possibly out of date, see indexOf()), its (shared, cached)
+    // analysis and its segment
+    private static class Line {
+        int index;
+        final LineAnalysis analysis;
+        Segment segment;
+
+        Line(int index, LineAnalysis analysis) {
+            this.index = index;
+            this.analysis = analysis;
+        }
+    }
+
+    // A segment in the document, from its first line on. Untracked once an edit replaces it.
+    private static class Segment {
+        final Line first;
+        final int lineCount;
+        final SegmentAnalysis analysis;
+        final Declared[] declared;
+        boolean tracked = false;
+
+        Segment(Line first, int lineCount, SegmentAnalysis analysis) {
+            this.first = first;
+            this.lineCount = lineCount;
+            this.analysis = analysis;
+            this.declared = new Declared[analysis.declarations.length];
+            for (int i = 0; i < declared.length; i++) declared[i] = new Declared(this, i);
+        }
+    }
+
+    // One declaration at its place in the document
+    private static class Declared {
+        final Segment segment;
+        final int ordinal;
+        // A value that uses names, folded against the declarations before it (until one of them changes)
+        boolean folded = false;
+        Constant constant;
+        Diagnostic error;
+
+        Declared(Segment segment, int ordinal) {
+            this.segment = segment;
+            this.ordinal = ordinal;
+        }
+
+        Declaration declaration() { return segment.analysis.declarations[ordinal]; }
+    }
+
+    // All declarations of one name, in source order. The owner is the first one with a valid value;
+    // every declaration after it is a duplicate, every one before it has an invalid value.
+    // Users are the declarations whose values use the name (a name may have users and no declarations).
+    private static class Symbol {
+        final List<Declared> declarations = new ArrayList<>(1);
+        final Set<Declared> users = new HashSet<>(2);
+        Declared owner;
+        Constant value;   // the owner's, as the users last saw it
+        int errorCount;   // what the name adds to semanticErrorCount
+
+        boolean isUnused() { return declarations.isEmpty() && users.isEmpty(); }
+    }
+
+    private static final int MIN_CACHE_SIZE = 1024;
+    private static final String[] NO_NAMES = new String[0];
+
+    private final LexicalAnalyzer lexicalAnalyzer;
+    private final SyntaxAnalyzer syntaxAnalyzer;
+    private final SemanticAnalyzer semanticAnalyzer;
+    private final ConstantFolder folder = new ConstantFolder();
+
+    private final List<Line> lines = new ArrayList<>();
+    private int indexedLines = 0;   // lines before this one know their position
+    private final Map<String, Symbol> symbols = new HashMap<>();
+    private final Map<String, LineAnalysis> lineCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LineAnalysis> eldest) {
+            return size() > Math.max(MIN_CACHE_SIZE, lines.size() * 2);
+        }
+    };
+    private final Map<String, SegmentAnalysis> segmentCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SegmentAnalysis> eldest) {
+            return size() > Math.max(MIN_CACHE_SIZE, lines.size() * 2);
+        }
+    };
+
+    // Running totals so pass/fail is known without walking the document
+    private int nonBlankLines = 0;
+    private int lexicalErrorCount = 0;
+    private int syntaxErrorCount = 0;
+    private int semanticErrorCount = 0;
+
+    private CompilerPipeline.Result result;   // built by getResult(), until the next edit
+
+    public IncrementalAnalyzer() {
+        this(new LexicalAnalyzer(), new SyntaxAnalyzer(), new SemanticAnalyzer());
+    }
+
+    public IncrementalAnalyzer(LexicalAnalyzer lexicalAnalyzer,
+                               SyntaxAnalyzer syntaxAnalyzer,
+                               SemanticAnalyzer semanticAnalyzer) {
+        this.lexicalAnalyzer = lexicalAnalyzer;
+        this.syntaxAnalyzer = syntaxAnalyzer;
+        this.semanticAnalyzer = semanticAnalyzer;
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        replace(0, 0, List.of(""), event);
+    }
+
+    // === EDITING ===
+
+    // Replace the whole document. Lines shared with the previous text (common prefix and suffix)
+    // are kept as they are, so typing in the middle of a file only touches the edited lines.
+    // The shared lines are compared in place: only the lines in between become Strings.
+    public void setText(String code) {
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        if (code == null) code = "";
+        int newLineCount = 1;
+        for (int i = code.indexOf('\n'); i >= 0; i = code.indexOf('\n', i + 1)) newLineCount++;
+
+        // Lines [0, prefix) are the same, the new text of line prefix starts at pos
+        int prefix = 0;
+        int pos = 0;
+        int maxPrefix = Math.min(lines.size(), newLineCount);
+        while (prefix < maxPrefix) {
+            String text = lines.get(prefix).analysis.text;
+            int end = pos + text.length();
+            if (!code.regionMatches(pos, text, 0, text.length()) || (end < code.length() && code.charAt(end) != '\n')) break;
+            prefix++;
+            pos = end + 1;
+        }
+
+        // The last suffix lines are the same, the new text before them ends at back
+        int suffix = 0;
+        int back = code.length();
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix) {
+            String text = lines.get(lines.size() - 1 - suffix).analysis.text;
+            int start = back - text.length();
+            if (start < 0 || !code.regionMatches(start, text, 0, text.length())
+                    || (start > 0 && code.charAt(start - 1) != '\n')) {
+                break;
+            }
+            suffix++;
+            back = start - 1;
+        }
+
+        int count = newLineCount - prefix - suffix;
+        List<String> replacement = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int end = i == count - 1 ? back : code.indexOf('\n', pos);
+            replacement.add(code.substring(pos, end));
+            pos = end + 1;
+        }
+        replace(prefix, lines.size() - suffix, replacement, event);
+    }
+
+    // Replace lines [fromLine, toLine) (0-based) with the lines of newText.
+    // An empty newText with fromLine == toLine inserts a single empty line.
+    public void replaceLines(int fromLine, int toLine, String newText) {
+        if (fromLine < 0 || toLine > lines.size() || fromLine > toLine) {
+            throw new IndexOutOfBoundsException("Invalid line range " + fromLine + ".." + toLine);
+        }
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        String[] newLines = newText.split("\n", -1);
+        List<String> replacement = new ArrayList<>(newLines.length);
+        for (String line : newLines) replacement.add(line);
+        replace(fromLine, toLine, replacement, event);
+    }
+
+    // The event counts what the edit brought in: the new lines, their characters and tokens
+    private void replace(int from, int to, List<String> replacement, AnalysisEvents.Stage event) {
+        Set<String> dirtyNames = new LinkedHashSet<>();
+        result = null;
+
+        // 1. Forget the segments the edit can change: from the one holding the line before it
+        //    (a statement open there runs on into the new lines) to the one holding its last line
+        int start = from > 0 ? indexOf(lines.get(from - 1).segment.first) : 0;
+        for (int i = start; i < to; ) {
+            Segment segment = lines.get(i).segment;
+            untrack(segment, dirtyNames);
+            i = indexOf(segment.first) + segment.lineCount;
+        }
+
+        // 2. Swap the lines, lexing (or fetching from cache) the new ones
+        List<Line> removed = lines.subList(from, to);
+        for (Line line : removed) {
+            if (!line.analysis.isBlank()) nonBlankLines--;
+            lexicalErrorCount -= line.analysis.lexicalErrors.getCount();
+        }
+        removed.clear();
+
+        List<Line> added = new ArrayList<>(replacement.size());
+        long addedChars = 0;
+        int addedTokens = 0;
+        for (int i = 0; i < replacement.size(); i++) {
+            Line line = new Line(from + i, lineAnalysis(replacement.get(i)));
+            if (!line.analysis.isBlank()) nonBlankLines++;
+            lexicalErrorCount += line.analysis.lexicalErrors.getCount();
+            addedChars += line.analysis.text.length() + 1;
+            addedTokens += line.analysis.tokens.size();
+            added.add(line);
+        }
+        lines.addAll(from, added);
+
+        // Positions after the edit only move if the number of lines changed, and only when asked for
+        if (added.size() != to - from) indexedLines = Math.min(indexedLines, from + added.size());
+
+        // 3. Cut the lines into segments again, from start until we are back at the first line
+        //    of a segment the edit did not touch. A statement left open by the edit swallows
+        //    the untouched segments after it until one of its lines closes it.
+        int i = start;
+        while (i < lines.size()) {
+            Line line = lines.get(i);
+            if (line.segment != null && line.segment.tracked && line.segment.first == line) break;
+
+            int first = i;
+            boolean open = false;
+            do {
+                Line next = lines.get(i++);
+                if (next.segment != null && next.segment.tracked) untrack(next.segment, dirtyNames);
+                TokenBuffer tokens = next.analysis.tokens;
+                if (!tokens.isEmpty()) open = tokens.type(tokens.size() - 1) != TokenBuffer.SEMICOLON;
+            } while (open && i < lines.size());
+
+            Segment segment = new Segment(line, i - first, segmentAnalysis(first, i));
+            for (int k = first; k < i; k++) lines.get(k).segment = segment;
+            track(segment, dirtyNames);
+        }
+
+        // 4. Re-resolve every name that was touched, and then the names whose values used one that changed.
+        //    A value only uses declarations before it, so this settles.
+        while (!dirtyNames.isEmpty()) {
+            Iterator<String> next = dirtyNames.iterator();
+            String name = next.next();
+            next.remove();
+            resolve(name, dirtyNames);
+        }
+
+        int errorCount = lexicalErrorCount + syntaxErrorCount + semanticErrorCount;
+        AnalysisEvents.commitStage(event, "Incremental", addedChars, added.size(), addedTokens, errorCount,
+                                   nonBlankLines > 0 && errorCount == 0);
+    }
+
+    private void untrack(Segment segment, Set<String> dirtyNames) {
+        segment.tracked = false;
+        syntaxErrorCount -= segment.analysis.syntaxErrors.getCount();
+
+        for (Declared declared : segment.declared) {
+            Declaration declaration = declared.declaration();
+            symbols.get(declaration.name).declarations.remove(declared);
+            dirtyNames.add(declaration.name);
+            for (String name : declaration.names) {
+                symbols.get(name).users.remove(declared);
+                dirtyNames.add(name);
+            }
+        }
+    }
+
+    private void track(Segment segment, Set<String> dirtyNames) {
+        segment.tracked = true;
+        syntaxErrorCount += segment.analysis.syntaxErrors.getCount();
+
+        for (Declared declared : segment.declared) {
+            Declaration declaration = declared.declaration();
+            Symbol symbol = symbols.computeIfAbsent(declaration.name, key -> new Symbol());
+            dirtyNames.add(declaration.name);
+
+            // Keep the declarations sorted by position (binary search on the current positions)
+            int low = 0, high = symbol.declarations.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (isBefore(symbol.declarations.get(mid), declared)) low = mid + 1;
+                else high = mid;
+            }
+            symbol.declarations.add(low, declared);
+
+            for (String name : declaration.names) {
+                symbols.computeIfAbsent(name, key -> new Symbol()).users.add(declared);
+            }
+        }
+    }
+
+    // Pick the owner of a name again and update the semantic error total. If the value its users
+    // see changed (another owner, or the owner's value was folded again), they are folded again too.
+    private void resolve(String name, Set<String> dirtyNames) {
+        Symbol symbol = symbols.get(name);
+        if (symbol == null) return;
+        semanticErrorCount -= symbol.errorCount;
+
+        // While the owner is picked the name is not declared yet, for its own declarations' values
+        Declared previous = symbol.owner;
+        symbol.owner = null;
+        Declared owner = null;
+        for (Declared declared : symbol.declarations) {
+            if (isValid(declared)) {
+                owner = declared;
+                break;
+            }
+        }
+        symbol.owner = owner;
+        symbol.errorCount = symbol.declarations.size() - (owner != null ? 1 : 0);
+        semanticErrorCount += symbol.errorCount;
+
+        // Only users care about the value (and a new user marks the name dirty, see track())
+        Constant value = owner == null || symbol.users.isEmpty() ? null : valueOf(owner);
+        if (owner != previous || !Objects.equals(value, symbol.value)) {
+            for (Declared user : symbol.users) {
+                user.folded = false;
+                dirtyNames.add(user.declaration().name);
+            }
+        }
+        symbol.value = value;
+        if (symbol.isUnused()) symbols.remove(name);
+    }
+
+    // Does the declaration have a valid value where it is? Values that use names are folded on demand.
+    private boolean isValid(Declared declared) {
+        Declaration declaration = declared.declaration();
+        if (declaration.names.length == 0) return declaration.error == null;
+        if (!declared.folded) {
+            Diagnostics errors = new Diagnostics(1);
+            declared.constant = folder.fold(declared.segment.analysis.tree, declaration.value, declaration.type,
+                                            (target, text, start, end) -> pushValueBefore(declared, target, text, start, end),
+                                            errors);
+            declared.error = declared.constant == null ? errors.getCollected().get(0) : null;
+            declared.folded = true;
+        }
+        return declared.error == null;
+    }
+
+    // What a name in the value of declared stands for: the value of its owner, if that comes first
+    private boolean pushValueBefore(Declared declared, ConstantFolder target, CharSequence text, int start, int end) {
+        Symbol symbol = symbols.get(text.subSequence(start, end).toString());
+        if (symbol == null || symbol.owner == null || !isBefore(symbol.owner, declared)) return false;
+        target.push(valueOf(symbol.owner));
+        return true;
+    }
+
+    // Source order of two declarations
+    private boolean isBefore(Declared declared, Declared other) {
+        int line = indexOf(declared.segment.first);
+        int otherLine = indexOf(other.segment.first);
+        return line < otherLine || (line == otherLine && declared.ordinal < other.ordinal);
+    }
+
+    // Where a line is now. A line whose index is out of date lies at or after indexedLines, so the
+    // positions are fixed up from there to the line; walks over the document fix them up as they go.
+    private int indexOf(Line line) {
+        int index = line.index;
+        if (index < lines.size() && lines.get(index) == line) return index;
+        while (indexedLines < lines.size()) {
+            Line next = lines.get(indexedLines);
+            next.index = indexedLines++;
+            if (next == line) break;
+        }
+        return line.index;
+    }
+
+    // Called with every line in order by the walks over the document
+    private void indexed(Line line, int index) {
+        line.index = index;
+        if (indexedLines == index) indexedLines++;
+    }
+
+    // The value of a valid declaration
+    private static Constant valueOf(Declared declared) {
+        Declaration declaration = declared.declaration();
+        if (declaration.names.length > 0) return declared.constant;
+        if (declaration.constant == null) {
+            declaration.constant = ConstantFolder.literal(declaration.type, declared.segment.analysis.tokens.getSource(),
+                                                          declaration.valueStart, declaration.valueEnd);
+        }
+        return declaration.constant;
+    }
+
+    // === PER-LINE AND PER-SEGMENT ANALYSIS ===
+
+    private LineAnalysis lineAnalysis(String text) {
+        LineAnalysis analysis = lineCache.get(text);
+        if (analysis == null) {
+            TokenBuffer tokens = new TokenBuffer(text, 8);
+            // A line is short, keep every error of it; the document-wide limit is applied in getResult()
+            Diagnostics lexicalErrors = new Diagnostics(Integer.MAX_VALUE);
+            lexicalAnalyzer.scanLine(text, 0, text.length(), 0, tokens, lexicalErrors);
+            analysis = new LineAnalysis(text, tokens, lexicalErrors);
+            lineCache.put(text, analysis);
+        }
+        return analysis;
+    }
+
+    // Lines [from, to) of the document as one segment. A single line keeps its own parse,
+    // longer segments are cached by their text.
+    private SegmentAnalysis segmentAnalysis(int from, int to) {
+        if (to - from == 1) {
+            LineAnalysis line = lines.get(from).analysis;
+            if (line.alone == null) line.alone = analyzeSegment(line.text, from, to);
+            return line.alone;
+        }
+
+        StringBuilder joined = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) joined.append('\n');
+            joined.append(lines.get(i).analysis.text);
+        }
+        String text = joined.toString();
+        SegmentAnalysis analysis = segmentCache.get(text);
+        if (analysis == null) {
+            analysis = analyzeSegment(text, from, to);
+            segmentCache.put(text, analysis);
+        }
+        return analysis;
+    }
+
+    private SegmentAnalysis analyzeSegment(String text, int from, int to) {
+        // The lines' tokens, moved into the segment's text (a single line already is its own text)
+        TokenBuffer tokens;
+        boolean lexicalErrors = false;
+        if (to - from == 1) {
+            tokens = lines.get(from).analysis.tokens;
+            lexicalErrors = !lines.get(from).analysis.lexicalErrors.isEmpty();
+        } else {
+            tokens = new TokenBuffer(text, 8);
+            int offset = 0;
+            for (int i = from; i < to; i++) {
+                LineAnalysis line = lines.get(i).analysis;
+                for (int t = 0; t < line.tokens.size(); t++) {
+                    tokens.add(line.tokens.type(t), offset + line.tokens.start(t), offset + line.tokens.end(t), i - from);
+                }
+                lexicalErrors |= !line.lexicalErrors.isEmpty();
+                offset += line.text.length() + 1;
+            }
+        }
+
+        // Every node has a main token of its own, so there are never more nodes than tokens
+        SyntaxTree tree = new SyntaxTree(tokens, tokens.size());
+        Diagnostics syntaxErrors = new Diagnostics(Integer.MAX_VALUE);
+        if (lexicalErrors) {
+            return new SegmentAnalysis(tokens, tree, syntaxErrors, new Declaration[0]);
+        }
+        SyntaxAnalyzer.Parser parser = new SyntaxAnalyzer.Parser(tokens, tree, syntaxErrors);
+        parser.advance(tokens.size());
+        parser.finish();
+        if (!syntaxErrors.isEmpty()) {
+            return new SegmentAnalysis(tokens, tree, syntaxErrors, new Declaration[0]);
+        }
+
+        List<Declaration> declarations = new ArrayList<>(1);
+        Diagnostics errors = new Diagnostics(1);
+        for (int s = 0; s < tree.statementCount(); s++) {
+            int statement = tree.statement(s);
+            int typeToken = tree.token(statement);
+            byte type = SymbolTable.typeOf(text, tokens.start(typeToken), tokens.end(typeToken));
+            for (int declarator = tree.firstChild(statement); declarator >= 0; declarator = tree.nextSibling(declarator)) {
+                int name = tree.token(declarator);
+                int value = tree.firstChild(declarator);
+                String[] names = names(tokens, tree, value);
+                Constant constant = null;
+                boolean valid = true;
+                if (ConstantFolder.isLiteral(tree, value)) {
+                    valid = ConstantFolder.checkLiteral(tree, value, type, errors);
+                } else if (names.length == 0) {
+                    constant = folder.fold(tree, value, type, ConstantFolder.NO_NAMES, errors);
+                    valid = constant != null;
+                }
+                Diagnostic error = null;
+                if (!valid) {
+                    error = errors.getCollected().get(0);
+                    errors = new Diagnostics(1);
+                }
+                declarations.add(new Declaration(type, tokens.value(name).toString(), tokens.line(name),
+                        tokens.column(name), tokens.start(name), tokens.end(name), value, tree.sourceStart(value),
+                        tree.sourceEnd(value), names, constant, error));
+            }
+        }
+        return new SegmentAnalysis(tokens, tree, syntaxErrors, declarations.toArray(new Declaration[0]));
+    }
+
+    // The variables an initializer uses, each once. By the name's token: a parenthesized name's
+    // node spans the parentheses too.
+    private static String[] names(TokenBuffer tokens, SyntaxTree tree, int value) {
+        if (!ConstantFolder.hasNames(tree, value)) return NO_NAMES;
+        Set<String> names = new LinkedHashSet<>();
+        for (int node = ConstantFolder.firstNode(tree, value); node <= value; node++) {
+            if (tree.kind(node) == SyntaxTree.NAME) names.add(tokens.value(tree.token(node)).toString());
+        }
+        return names.toArray(new String[0]);
+    }
+
+    // === RESULTS ===
+
+    public int getLineCount() { return lines.size(); }
+    public String getLine(int index) { return lines.get(index).analysis.text; }
+    public boolean isLexicalPassed() { return nonBlankLines > 0 && lexicalErrorCount == 0; }
+    public boolean isSyntaxPassed() { return isLexicalPassed() && syntaxErrorCount == 0; }
+    public boolean isSemanticPassed() { return isSyntaxPassed() && semanticErrorCount == 0; }
+
+    // Build the same Results CompilerPipeline.run() would return for the current text.
+    // Built once per version of the text: until the next edit the same Result is returned.
+    public CompilerPipeline.Result getResult() {
+        if (result == null) {
+            AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+            event.begin();
+            result = buildResult();
+            AnalysisEvents.commitPipeline(event, "Incremental result", result.lexical.tokens.getSource().length(),
+                                          lines.size(), result);
+        }
+        return result;
+    }
+
+    private CompilerPipeline.Result buildResult() {
+        if (nonBlankLines == 0) {
+            return new CompilerPipeline.Result(lexicalAnalyzer.analyze(""), null, null);
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) text.append('\n');
+            text.append(lines.get(i).analysis.text);
+        }
+        String code = text.toString();
+
+        Diagnostics lexicalErrors = new Diagnostics(lexicalAnalyzer.getMaxErrors());
+        TokenBuffer tokens = new TokenBuffer(code, lexicalErrorCount == 0 ? Math.max(16, code.length() / 8) : 0);
+        int offset = 0;
+        for (int index = 0; index < lines.size(); index++) {
+            Line line = lines.get(index);
+            indexed(line, index);
+            LineAnalysis analysis = line.analysis;
+            if (lexicalErrorCount > 0) {
+                for (Diagnostic error : analysis.lexicalErrors.getCollected()) lexicalErrors.addAtLine(error, index + 1);
+            } else {
+                TokenBuffer lineTokens = analysis.tokens;
+                for (int i = 0; i < lineTokens.size(); i++) {
+                    tokens.add(lineTokens.type(i), offset + lineTokens.start(i), offset + lineTokens.end(i), index + 1);
+                }
+            }
+            offset += analysis.text.length() + 1;
+        }
+
+        LexicalAnalyzer.Result lexical = lexicalAnalyzer.toResult(code, tokens, lexicalErrors);
+        if (!lexical.success) {
+            return new CompilerPipeline.Result(lexical, null, null);
+        }
+
+        // Every segment's tokens are the tokens of its lines, so its tree moves by the tokens before it.
+        // The walk above brought every line's index up to date.
+        Diagnostics syntaxErrors = new Diagnostics(syntaxAnalyzer.getMaxErrors());
+        SyntaxTree tree = new SyntaxTree(tokens, syntaxErrorCount == 0 ? Math.max(16, tokens.size() / 2) : 0);
+        int tokenOffset = 0;
+        for (Line line : lines) {
+            Segment segment = line.segment;
+            if (segment.first != line) continue;
+            if (syntaxErrorCount > 0) {
+                for (Diagnostic error : segment.analysis.syntaxErrors.getCollected()) {
+                    syntaxErrors.addAtLine(error, line.index + error.line + 1);
+                }
+            } else {
+                tree.addAll(segment.analysis.tree, tokenOffset);
+                tokenOffset += segment.analysis.tokens.size();
+            }
+        }
+        SyntaxAnalyzer.Result syntax = syntaxAnalyzer.toResult(tree, syntaxErrors);
+        if (!syntax.success) {
+            return new CompilerPipeline.Result(lexical, syntax, null);
+        }
+
+        Diagnostics semanticErrors = new Diagnostics(semanticAnalyzer.getMaxErrors());
+        SymbolTable table = new SymbolTable(code);
+        offset = 0;
+        for (Line line : lines) {
+            int segmentOffset = offset;
+            offset += line.analysis.text.length() + 1;
+            if (line.segment.first != line) continue;
+
+            for (Declared declared : line.segment.declared) {
+                Declaration declaration = declared.declaration();
+                if (symbols.get(declaration.name).owner == declared) {
+                    // A lone literal's constant may still be null, the table reads it when asked
+                    Constant constant = declaration.names.length == 0 ? declaration.constant : declared.constant;
+                    table.add(code, segmentOffset + declaration.nameStart, segmentOffset + declaration.nameEnd,
+                              declaration.type, segmentOffset + declaration.valueStart,
+                              segmentOffset + declaration.valueEnd, constant, line.index + declaration.nameLine + 1);
+                } else {
+                    addSemanticError(declared, semanticErrors);
+                }
+            }
+        }
+        return new CompilerPipeline.Result(lexical, syntax, semanticAnalyzer.toResult(table, semanticErrors));
+    }
+
+    // The errors of the first stage that fails, as getResult() would report them, but without
+    // rebuilding the text, the tokens or the symbol table. Empty if every stage passes.
+    // The walk stops once the limit is reached: the errors after that are only counted, and the
+    // running totals already know how many there are.
+    // Cancellable (see Cancellation.throwIfCancelled) for callers that may be superseded.
+    public Diagnostics getDiagnostics() {
+        Diagnostics diagnostics;
+        int errorCount;
+        if (lexicalErrorCount > 0) {
+            diagnostics = new Diagnostics(lexicalAnalyzer.getMaxErrors());
+            errorCount = lexicalErrorCount;
+        } else if (syntaxErrorCount > 0) {
+            diagnostics = new Diagnostics(syntaxAnalyzer.getMaxErrors());
+            errorCount = syntaxErrorCount;
+        } else {
+            diagnostics = new Diagnostics(semanticAnalyzer.getMaxErrors());
+            errorCount = semanticErrorCount;
+            if (semanticErrorCount == 0) return diagnostics;
+        }
+
+        for (int index = 0; index < lines.size(); index++) {
+            if (diagnostics.isFull()) {
+                diagnostics.addCount(errorCount - diagnostics.getCount());
+                break;
+            }
+            if ((index & 1023) == 1023) Cancellation.throwIfCancelled();
+            Line line = lines.get(index);
+            indexed(line, index);
+            if (lexicalErrorCount > 0) {
+                for (Diagnostic error : line.analysis.lexicalErrors.getCollected()) diagnostics.addAtLine(error, index + 1);
+                continue;
+            }
+            Segment segment = line.segment;
+            if (segment.first != line) continue;
+            if (syntaxErrorCount > 0) {
+                for (Diagnostic error : segment.analysis.syntaxErrors.getCollected()) {
+                    diagnostics.addAtLine(error, index + error.line + 1);
+                }
+            } else {
+                for (Declared declared : segment.declared) {
+                    if (symbols.get(declared.declaration().name).owner != declared) addSemanticError(declared, diagnostics);
+                }
+            }
+        }
+        return diagnostics;
+    }
+
+    // A declaration that does not own its name: a duplicate if the owner comes first, otherwise its value is invalid
+    private void addSemanticError(Declared declared, Diagnostics errors) {
+        Declaration declaration = declared.declaration();
+        Declared owner = symbols.get(declaration.name).owner;
+        int firstLine = indexOf(declared.segment.first) + 1;
+        if (owner != null && isBefore(owner, declared)) {
+            errors.add(Diagnostic.Code.ALREADY_DECLARED, firstLine + declaration.nameLine, declaration.nameColumn,
+                       declaration.name);
+        } else {
+            Diagnostic error = declaration.names.length == 0 ? declaration.error : declared.error;
+            errors.addAtLine(error, firstLine + error.line);
+        }
+    }
+}
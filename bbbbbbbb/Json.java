@@ -0,0 +1,283 @@
+package com.tam.compiler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Just enough JSON for the protocol front ends (LspServer), without a library.
+ *
+ * Parsing gives plain Java objects: Map (insertion order kept), List, String, Long for
+ * whole numbers, Double for the rest, Boolean, and null. write() accepts the same types,
+ * plus any other Number and CharSequence.
+ *
+ * Objects and arrays may nest MAX_NESTING deep, like expressions in SyntaxAnalyzer: anything
+ * deeper is rejected as malformed instead of running the recursion out of stack.
+ */
+final class Json {
+
+    static final int MAX_NESTING = 256;
+
+    private Json() {}
+
+    static Object parse(String text) {
+        Parser parser = new Parser(text);
+        parser.skipWhitespace();
+        Object value = parser.value();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) throw parser.error("Unexpected trailing characters");
+        return value;
+    }
+
+    static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(out, value);
+        return out.toString();
+    }
+
+    static void write(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof CharSequence text) {
+            writeString(out, text);
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            out.append(value);
+        } else if (value instanceof Number number) {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) out.append("null");
+            else if (d == Math.rint(d) && Math.abs(d) < 1e15) out.append((long) d);
+            else out.append(d);
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) out.append(',');
+                first = false;
+                writeString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                write(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof List<?> list) {
+            out.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) out.append(',');
+                write(out, list.get(i));
+            }
+            out.append(']');
+        } else {
+            throw new IllegalArgumentException("Not a JSON value: " + value.getClass().getName());
+        }
+    }
+
+    static void writeString(StringBuilder out, CharSequence text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    // === ACCESSORS ===
+    // For walking parsed messages without a cast at every step; a missing or mistyped member gives null
+
+    static Map<?, ?> object(Object value, String key) {
+        return value instanceof Map<?, ?> map && map.get(key) instanceof Map<?, ?> member ? member : null;
+    }
+
+    static List<?> array(Object value, String key) {
+        return value instanceof Map<?, ?> map && map.get(key) instanceof List<?> member ? member : null;
+    }
+
+    static String string(Object value, String key) {
+        return value instanceof Map<?, ?> map && map.get(key) instanceof String member ? member : null;
+    }
+
+    static long number(Object value, String key, long defaultValue) {
+        return value instanceof Map<?, ?> map && map.get(key) instanceof Number member ? member.longValue() : defaultValue;
+    }
+
+    // === PARSER ===
+
+    private static class Parser {
+        final String text;
+        int pos = 0;
+        int nesting = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            if (pos >= text.length()) throw error("Unexpected end of input");
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                case '[':
+                    if (++nesting > MAX_NESTING) throw error("Nested deeper than " + MAX_NESTING);
+                    Object nested = c == '{' ? object() : array();
+                    nesting--;
+                    return nested;
+                case '"': return string();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) return number();
+                    throw error("Unexpected character '" + c + "'");
+            }
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') throw error("Expected a member name");
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                map.put(key, value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return map;
+                }
+            }
+        }
+
+        List<Object> array() {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                skipWhitespace();
+                list.add(value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+
+        String string() {
+            pos++;
+            StringBuilder out = null;   // only needed once an escape shows up
+            int start = pos;
+            while (true) {
+                if (pos >= text.length()) throw error("Unterminated string");
+                char c = text.charAt(pos);
+                if (c == '"') {
+                    String tail = text.substring(start, pos++);
+                    return out == null ? tail : out.append(tail).toString();
+                }
+                if (c != '\\') {
+                    pos++;
+                    continue;
+                }
+                if (out == null) out = new StringBuilder();
+                out.append(text, start, pos);
+                if (pos + 1 >= text.length()) throw error("Unterminated string");
+                char escaped = text.charAt(pos + 1);
+                pos += 2;
+                switch (escaped) {
+                    case '"', '\\', '/' -> out.append(escaped);
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) throw error("Bad unicode escape");
+                        try {
+                            out.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Bad unicode escape");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error("Bad escape '\\" + escaped + "'");
+                }
+                start = pos;
+            }
+        }
+
+        Object number() {
+            int start = pos;
+            if (peek() == '-') pos++;
+            boolean integral = true;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c >= '0' && c <= '9') {
+                    pos++;
+                } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integral = false;
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            String literal = text.substring(start, pos);
+            try {
+                if (integral && literal.length() < 19) return Long.parseLong(literal);
+                return Double.parseDouble(literal);
+            } catch (NumberFormatException e) {
+                throw error("Bad number '" + literal + "'");
+            }
+        }
+
+        Object literal(String word, Object value) {
+            if (!text.startsWith(word, pos)) throw error("Unexpected character '" + text.charAt(pos) + "'");
+            pos += word.length();
+            return value;
+        }
+
+        void expect(char c) {
+            if (peek() != c) throw error("Expected '" + c + "'");
+            pos++;
+        }
+
+        char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') break;
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos);
+        }
+    }
+}
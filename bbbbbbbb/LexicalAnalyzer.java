@@ -1,12 +1,11 @@
 package com.tam.compiler;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class LexicalAnalyzer {
 
     // Simple Token structure to hold our data
+    // The Lexer itself stores tokens in a TokenBuffer; these are only built on demand (TokenBuffer.asList())
     public static class Token {
         public final String type;
         public final String value;
@@ -22,106 +21,237 @@ public class LexicalAnalyzer {
     // Result object to send data back to the UI
     public static class Result {
         public final boolean success;
-        public final String message;
-        public final List<Token> tokens;
-        public final List<String> errors;
+        public final TokenBuffer tokens;
+        public final List<Diagnostic> diagnostics;  // at most maxErrors of them
+        public final int errorCount;                // every error, including the ones not kept
+        private final String title;
         
-        public Result(boolean success, String message, List<Token> tokens, List<String> errors) {
+        public Result(boolean success, String title, TokenBuffer tokens, Diagnostics errors) {
             this.success = success;
-            this.message = message;
+            this.title = title;
             this.tokens = tokens;
-            this.errors = errors;
+            this.diagnostics = errors.getCollected();
+            this.errorCount = errors.getCount();
+        }
+
+        public String getTitle() { return title; }
+
+        // The text shown to the user, only built when asked for
+        public String getMessage() {
+            return Diagnostics.formatMessage(title, diagnostics, errorCount);
         }
     }
 
-    // === REGEX PATTERNS FOR TOKEN CLASSIFICATION ===
-    // We use these strictly to label a token AFTER we've extracted it.
-    private final Pattern[] tokenPatterns = {
-        Pattern.compile("^(int|double|float|char|boolean|byte|short|long|String)$"),
-        Pattern.compile("^[a-zA-Z_][a-zA-Z0-9_]*$"),
-        Pattern.compile("^-?\\d+(\\.\\d+)?[fFdDlL]?$"),
-        Pattern.compile("^\"[^\"]*\"$"),
-        Pattern.compile("^'.'$"),
-        Pattern.compile("^=$"),
-        Pattern.compile("^;$")
-    };
-
-    private final String[] tokenTypes = {
-        "KEYWORD", "IDENTIFIER", "NUMBER", "STRING", "CHAR", "ASSIGNMENT", "SEMICOLON"
-    };
-
-    // === MAIN TOKEN EXTRACTION REGEX ===
-    // This is the engine of the Lexer. The order is important
-    // We match complex structures (like Strings) first so they aren't chopped up.
-    private final Pattern tokenPattern = Pattern.compile(
-            // Strings
-            "(\"[^\"]*\")" +
-            // Single characters ('a')
-            "|('[^']')" +
-            //Delimiters (= or ;)
-            "|([=;])" +
-            // Numbers (Integers, Decimals, with f/L suffixes)
-            "|(-?\\d+(?:\\.\\d+)?[fFdDlL]?)" +
-            //Identifiers (Variable names or Keywords)
-            "|([a-zA-Z_][a-zA-Z0-9_]*)" +
-            //Matches any non-whitespace character (\S) that wasn't caught above
-            "|(\\S)"
-    );
+    private int maxErrors = Diagnostics.DEFAULT_MAX_ERRORS;
+
+    public int getMaxErrors() { return maxErrors; }
+    public void setMaxErrors(int maxErrors) { this.maxErrors = Math.max(1, maxErrors); }
 
     public Result analyze(String code) {
+        // Recorded as a JFR event (see AnalysisEvents)
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        Result result = tokenize(code);
+        AnalysisEvents.commitStage(event, "Lexical", code, result.tokens.size(), result.errorCount, result.success);
+        return result;
+    }
+
+    private Result tokenize(String code) {
         // Safety check: Don't crash on empty input
-        if (code == null || code.trim().isEmpty()) {
-            return new Result(false, "There is no code open to analyze", new ArrayList<>(), new ArrayList<>());
+        if (isBlank(code)) {
+            return new Result(false, "There is no code open to analyze", new TokenBuffer(code, 0), new Diagnostics(maxErrors));
         }
 
-        List<Token> tokens = new ArrayList<>();
-        List<String> errors = new ArrayList<>();
-        String[] lines = code.split("\n");
-
-        for (int lineNum = 0; lineNum < lines.length; lineNum++) {
-            String line = lines[lineNum].trim();
-            if (line.isEmpty()) continue;
+        // Roughly one token every 8 characters; the buffer grows if we guessed low
+        TokenBuffer tokens = new TokenBuffer(code, Math.max(16, code.length() / 8));
+        Diagnostics errors = new Diagnostics(maxErrors);
+        scan(code, tokens, errors);
+        return toResult(code, tokens, errors);
+    }
 
-            java.util.regex.Matcher matcher = tokenPattern.matcher(line);
+    // Walk the source line by line without splitting it into new Strings
+    void scan(String code, TokenBuffer tokens, Diagnostics errors) {
+        int lineStart = 0;
+        int lineNum = 0;
+        while (true) {
+            int newline = code.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? code.length() : newline;
+            lineNum++;
+            if ((lineNum & 1023) == 0) Cancellation.throwIfCancelled();
+            scanLine(code, lineStart, lineEnd, lineNum, tokens, errors);
+            if (newline < 0) break;
+            lineStart = newline + 1;
+        }
+    }
 
-            // We use matcher.find() instead of string.split()
-            // split() consumes delimiters (deleting '=' and ';'), making them impossible to detect
-            // matcher.find() extracts them as distinct tokens without removal
-            while (matcher.find()) {
-                String tokenStr = matcher.group().trim();
+    Result toResult(CharSequence code, TokenBuffer tokens, Diagnostics errors) {
+        // If even one error exists, the whole analysis fails
+        if (!errors.isEmpty()) {
+            return new Result(false, "Lexical Analysis Failed!", new TokenBuffer(code, 0), errors);
+        }
+        return new Result(true, "Lexical Analysis Passed!", tokens, errors);
+    }
 
-                if (matcher.group(6) != null) {
-                    errors.add("Line " + (lineNum + 1) + ": Unknown token '" + tokenStr + "'");
-                    continue;
-                }
+    // === THE SCANNER ===
+    // A small state machine: the first character of a token decides which branch reads it.
+    // The branches are tried in the same priority the old regex used:
+    // Strings, Chars, Delimiters, Numbers, Identifiers and finally "anything else" (an error).
+    // Works on any CharSequence so the streaming analyzer can feed it decoded buffers.
+    //
+    // A '-' right before a digit is the sign of a negative literal ("-3"), unless the token before
+    // it on the same line ends an operand ("5-3", "x -3", ") -3"): then it is the operator.
+    void scanLine(CharSequence code, int start, int end, int lineNum, TokenBuffer tokens, Diagnostics errors) {
+        int lineStart = start;
+        // Same as String.trim(): ignore leading and trailing control/space characters
+        while (start < end && code.charAt(start) <= ' ') start++;
+        while (end > start && code.charAt(end - 1) <= ' ') end--;
 
-                if (tokenStr.isEmpty()) continue;
+        int pos = start;
+        boolean afterOperand = false;
+        while (pos < end) {
+            char c = code.charAt(pos);
+            if (isWhitespace(c)) {
+                pos++;
+                continue;
+            }
 
-                String type = identifyTokenType(tokenStr);
+            int tokenEnd = -1;
+            int type = -1;
 
-                if (type != null) {
-                    tokens.add(new Token(type, tokenStr, lineNum + 1));
-                } else {
-                    errors.add("Line " + (lineNum + 1) + ": Invalid token '" + tokenStr + "'");
+            if (c == '"') {
+                // Strings: everything up to the next quote on the same line
+                for (int i = pos + 1; i < end; i++) {
+                    if (code.charAt(i) == '"') {
+                        tokenEnd = i + 1;
+                        type = TokenBuffer.STRING;
+                        break;
+                    }
                 }
+            } else if (c == '\'') {
+                // Single characters ('a'), the middle may be any code point except a quote
+                if (pos + 1 < end) {
+                    int cp = Character.codePointAt(code, pos + 1);
+                    int close = pos + 1 + Character.charCount(cp);
+                    if (cp != '\'' && close < end && code.charAt(close) == '\'') {
+                        tokenEnd = close + 1;
+                        type = TokenBuffer.CHAR;
+                        if (isLineTerminator(cp)) {
+                            errors.add(Diagnostic.Code.INVALID_TOKEN, lineNum, pos - lineStart + 1, code, pos, tokenEnd);
+                            pos = tokenEnd;
+                            continue;
+                        }
+                    }
+                }
+            } else if (c == '=') {
+                tokenEnd = pos + 1;
+                type = TokenBuffer.ASSIGNMENT;
+            } else if (c == ';') {
+                tokenEnd = pos + 1;
+                type = TokenBuffer.SEMICOLON;
+            } else if (c == ',') {
+                tokenEnd = pos + 1;
+                type = TokenBuffer.COMMA;
+            } else if (isDigit(c) || (c == '-' && !afterOperand && pos + 1 < end && isDigit(code.charAt(pos + 1)))) {
+                tokenEnd = scanNumber(code, pos, end);
+                type = TokenBuffer.NUMBER;
+            } else if (c == '+' || c == '-' || c == '*' || c == '/' || c == '%') {
+                tokenEnd = pos + 1;
+                type = TokenBuffer.OPERATOR;
+            } else if (c == '(' || c == ')') {
+                tokenEnd = pos + 1;
+                type = TokenBuffer.PARENTHESIS;
+            } else if (isIdentifierStart(c)) {
+                int i = pos + 1;
+                while (i < end && isIdentifierPart(code.charAt(i))) i++;
+                tokenEnd = i;
+                type = isKeyword(code, pos, i - pos) ? TokenBuffer.KEYWORD : TokenBuffer.IDENTIFIER;
+            }
+
+            if (type < 0) {
+                // Nothing matched: report the single (possibly supplementary) character
+                int cp = Character.codePointAt(code, pos);
+                int cpEnd = pos + Character.charCount(cp);
+                errors.add(Diagnostic.Code.UNKNOWN_TOKEN, lineNum, pos - lineStart + 1, code, pos, cp <= ' ' ? pos : cpEnd);
+                pos = cpEnd;
+                continue;
             }
+
+            tokens.add(type, pos, tokenEnd, lineNum);
+            afterOperand = type == TokenBuffer.NUMBER || type == TokenBuffer.IDENTIFIER || type == TokenBuffer.KEYWORD
+                    || type == TokenBuffer.STRING || type == TokenBuffer.CHAR || c == ')';
+            pos = tokenEnd;
+        }
+    }
+
+    // Numbers (Integers, Decimals, with f/L suffixes): -?digits(.digits)?[fFdDlL]?
+    private int scanNumber(CharSequence code, int pos, int end) {
+        int i = pos;
+        if (code.charAt(i) == '-') i++;
+        while (i < end && isDigit(code.charAt(i))) i++;
+
+        // A dot only belongs to the number if at least one digit follows it
+        if (i + 1 < end && code.charAt(i) == '.' && isDigit(code.charAt(i + 1))) {
+            i += 2;
+            while (i < end && isDigit(code.charAt(i))) i++;
         }
 
-        // If even one error exists, the whole analysis fails
-        if (!errors.isEmpty()) {
-            return new Result(false, "Lexical Analysis Failed!\n\n" + String.join("\n", errors), new ArrayList<>(), errors);
+        if (i < end && "fFdDlL".indexOf(code.charAt(i)) >= 0) i++;
+        return i;
+    }
+
+    // Helper: Keywords are checked by length first so most identifiers are rejected instantly
+    private boolean isKeyword(CharSequence code, int start, int length) {
+        switch (length) {
+            case 3:
+                return regionEquals(code, start, "int");
+            case 4:
+                return regionEquals(code, start, "char") || regionEquals(code, start, "byte") || regionEquals(code, start, "long");
+            case 5:
+                return regionEquals(code, start, "float") || regionEquals(code, start, "short");
+            case 6:
+                return regionEquals(code, start, "double") || regionEquals(code, start, "String");
+            case 7:
+                return regionEquals(code, start, "boolean");
+            default:
+                return false;
         }
-        return new Result(true, "Lexical Analysis Passed!", tokens, new ArrayList<>());
     }
 
-    // Helper: Matches the raw string against our specific definitions
-    private String identifyTokenType(String token) {
-        for (int i = 0; i < tokenPatterns.length; i++) {
-            if (tokenPatterns[i].matcher(token).matches()) {
-                return tokenTypes[i];
-            }
+    private static boolean regionEquals(CharSequence code, int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (code.charAt(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    static boolean isBlank(String code) {
+        if (code == null) return true;
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) > ' ') return false;
         }
-        return null;
+        return true;
+    }
+
+    // Same characters the regex \\s treated as whitespace
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Characters the regex '.' refuses to match
+    private static boolean isLineTerminator(int cp) {
+        return cp == '\n' || cp == '\r' || cp == '\u0085' || cp == '\u2028' || cp == '\u2029';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
     }
 
 }
@@ -0,0 +1,153 @@
+package com.tam.compiler;
+
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextFormatter;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+
+/*
+ * Line numbers for the code editor, drawn only for the lines that are on screen.
+ *
+ * The old gutter was a second TextArea holding every number from 1 to N, rebuilt on each
+ * change. Here a Canvas the size of the viewport paints the few dozen visible numbers,
+ * positioned from the code area's scrollTop, so a 200k-line file costs the same as a short one.
+ *
+ * The line count is maintained from the edits themselves: a TextFormatter sees every change
+ * (setText, clear, typing) and only the replaced and inserted text is scanned for newlines.
+ */
+public final class LineNumberGutter extends Region {
+
+    private static final Color NUMBER_COLOR = Color.web("#475569");
+    private static final double NUMBER_FONT_SIZE = 12;
+    private static final double MIN_WIDTH = 50;
+    private static final double SIDE_PADDING = 8;
+
+    private final TextArea codeArea;
+    private final Canvas canvas = new Canvas();
+    private int lineCount = 1;
+    private int digits = 1;
+
+    // Measured from the code area's font, reset whenever that font changes
+    private double lineHeight = -1;
+    private double digitWidth;
+    private Font numberFont;
+
+    public LineNumberGutter(TextArea codeArea) {
+        this.codeArea = codeArea;
+        getChildren().add(canvas);
+        setFocusTraversable(false);
+        setStyle("-fx-background-color: rgba(15,23,42,0.5); " +
+                 "-fx-border-color: rgba(51,65,85,0.6); -fx-border-width: 0 1 0 0;");
+
+        codeArea.setTextFormatter(new TextFormatter<String>(change -> {
+            if (change.isContentChange()) {
+                String text = change.getText();
+                lineCount += countNewlines(text, 0, text.length())
+                           - countNewlines(change.getControlText(), change.getRangeStart(), change.getRangeEnd());
+            }
+            return change;
+        }));
+
+        // Repaint on scroll and text changes; remeasure when CSS gives the code area its real font
+        codeArea.scrollTopProperty().addListener((obs, old, val) -> draw());
+        codeArea.textProperty().addListener((obs, old, val) -> refresh());
+        codeArea.fontProperty().addListener((obs, old, val) -> {
+            lineHeight = -1;
+            requestLayout();
+        });
+    }
+
+    public int getLineCount() { return lineCount; }
+
+    // Called after the text changed: the gutter only needs to grow when a digit is added
+    private void refresh() {
+        int newDigits = Integer.toString(lineCount).length();
+        if (newDigits != digits) {
+            digits = newDigits;
+            requestLayout();
+        }
+        draw();
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        measure();
+        return Math.max(MIN_WIDTH, digits * digitWidth + 2 * SIDE_PADDING);
+    }
+
+    @Override
+    protected double computeMinWidth(double height) {
+        return computePrefWidth(height);
+    }
+
+    @Override
+    protected double computeMaxWidth(double height) {
+        return computePrefWidth(height);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        draw();
+    }
+
+    // ==================== Drawing ====================
+    private void draw() {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, width, height);
+        if (width <= 0 || height <= 0) return;
+        measure();
+
+        // Where line 1 would be, in gutter coordinates
+        double top = contentTop() - codeArea.getScrollTop();
+        int first = Math.max(0, (int) Math.floor(-top / lineHeight));
+        int last = Math.min(lineCount, (int) Math.ceil((height - top) / lineHeight));
+
+        g.setFont(numberFont);
+        g.setFill(NUMBER_COLOR);
+        g.setTextAlign(TextAlignment.RIGHT);
+        g.setTextBaseline(VPos.CENTER);
+        double x = width - SIDE_PADDING;
+        for (int i = first; i < last; i++) {
+            g.fillText(Integer.toString(i + 1), x, top + i * lineHeight + lineHeight / 2);
+        }
+    }
+
+    private void measure() {
+        if (lineHeight > 0) return;
+        Font codeFont = codeArea.getFont();
+        Text probe = new Text("0");
+        probe.setFont(codeFont);
+        lineHeight = Math.max(1, probe.getLayoutBounds().getHeight());
+
+        numberFont = Font.font(codeFont.getFamily(), NUMBER_FONT_SIZE);
+        probe.setFont(numberFont);
+        digitWidth = probe.getLayoutBounds().getWidth();
+    }
+
+    // Distance from the top of the code area to its first line of text (control + skin padding)
+    private double contentTop() {
+        double top = codeArea.getInsets().getTop();
+        Node content = codeArea.lookup(".content");
+        if (content instanceof Region region) top += region.getInsets().getTop();
+        return top;
+    }
+
+    private static int countNewlines(String text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,177 @@
+package com.tam.compiler;
+
+/*
+ * Decides whether a value is a valid literal for a declared type, without regexes,
+ * exceptions or allocation. Works on a range of any CharSequence so the value can be
+ * checked where it sits in the source.
+ *
+ * The accepted formats are the ones SemanticAnalyzer always had:
+ *   byte, short, int   -?digits                       and within the type's range
+ *   long               -?digits, optional l/L         and within the long range
+ *   float              -?digits(.digits)? with f/F, or a plain -?digits
+ *   double             -?digits(.digits)?, optional d/D
+ *   char               one character in single quotes ('a')
+ *   boolean            true or false
+ *   String             anything without a double quote, in double quotes
+ *
+ * float and double must also be representable: a literal that rounds to Infinity, or a
+ * non-zero literal that rounds to 0, is rejected (javac rejects both as well).
+ */
+final class LiteralChecker {
+
+    private LiteralChecker() {}
+
+    // Decimal digits a finite value can have before the point; more means Infinity for sure
+    private static final int FLOAT_MAX_INTEGER_DIGITS = 39;     // Float.MAX_VALUE  ~ 3.4e38
+    private static final int DOUBLE_MAX_INTEGER_DIGITS = 309;   // Double.MAX_VALUE ~ 1.8e308
+
+    // Zeros after the point a non-zero value can start with before it may round to 0
+    private static final int FLOAT_MAX_LEADING_ZEROS = 44;      // Float.MIN_VALUE  ~ 1.4e-45
+    private static final int DOUBLE_MAX_LEADING_ZEROS = 323;    // Double.MIN_VALUE ~ 4.9e-324
+
+    static boolean isValid(byte type, CharSequence text, int start, int end) {
+        switch (type) {
+            case SymbolTable.BYTE:
+                return isIntegral(text, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE);
+            case SymbolTable.SHORT:
+                return isIntegral(text, start, end, Short.MIN_VALUE, Short.MAX_VALUE);
+            case SymbolTable.INT:
+                return isIntegral(text, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            case SymbolTable.LONG:
+                // The suffix is optional for long
+                if (end > start && (text.charAt(end - 1) == 'l' || text.charAt(end - 1) == 'L')) end--;
+                return isIntegral(text, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+            case SymbolTable.FLOAT:
+                return isFloat(text, start, end);
+            case SymbolTable.DOUBLE:
+                return isDouble(text, start, end);
+            case SymbolTable.CHAR:
+                return isChar(text, start, end);
+            case SymbolTable.BOOLEAN:
+                return regionEquals(text, start, end, "true") || regionEquals(text, start, end, "false");
+            case SymbolTable.STRING:
+                return isString(text, start, end);
+            default:
+                return false;
+        }
+    }
+
+    // === INTEGRAL TYPES ===
+    // -?digits, accumulated as a negative long (like Long.parseLong) so Long.MIN_VALUE fits,
+    // stopping as soon as the value leaves [min, max].
+    private static boolean isIntegral(CharSequence text, int start, int end, long min, long max) {
+        boolean negative = start < end && text.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) return false;
+
+        long limit = negative ? min : -max;
+        long multiplyMin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return false;
+            // Both checks happen before the arithmetic, so nothing can overflow
+            if (result < multiplyMin) return false;
+            result *= 10;
+            if (result < limit + digit) return false;
+            result -= digit;
+        }
+        return true;
+    }
+
+    // === FLOATING POINT TYPES ===
+
+    private static boolean isFloat(CharSequence text, int start, int end) {
+        if (end > start && (text.charAt(end - 1) == 'f' || text.charAt(end - 1) == 'F')) {
+            return isDecimal(text, start, end - 1, true, true);
+        }
+        // Without the suffix only a whole number is accepted (implicit int -> float)
+        return isDecimal(text, start, end, false, true);
+    }
+
+    private static boolean isDouble(CharSequence text, int start, int end) {
+        if (end > start && (text.charAt(end - 1) == 'd' || text.charAt(end - 1) == 'D')) end--;
+        return isDecimal(text, start, end, true, false);
+    }
+
+    // -?digits(.digits)? followed by the range check. Only literals right at the edge of the
+    // range (rare) are handed to the JDK parser to decide exactly.
+    private static boolean isDecimal(CharSequence text, int start, int end, boolean fractionAllowed, boolean isFloat) {
+        int maxIntegerDigits = isFloat ? FLOAT_MAX_INTEGER_DIGITS : DOUBLE_MAX_INTEGER_DIGITS;
+        int maxLeadingZeros = isFloat ? FLOAT_MAX_LEADING_ZEROS : DOUBLE_MAX_LEADING_ZEROS;
+        int i = start < end && text.charAt(start) == '-' ? start + 1 : start;
+
+        // Integer part (leading zeros do not count towards the size)
+        int digitsStart = i;
+        int significantStart = -1;
+        while (i < end && isDigit(text.charAt(i))) {
+            if (significantStart < 0 && text.charAt(i) != '0') significantStart = i;
+            i++;
+        }
+        if (i == digitsStart) return false;
+        int integerDigits = significantStart < 0 ? 0 : i - significantStart;
+
+        // Optional fraction, at least one digit after the point
+        int leadingZeros = 0;
+        boolean nonZeroFraction = false;
+        if (i < end) {
+            if (!fractionAllowed || text.charAt(i) != '.') return false;
+            int fractionStart = ++i;
+            while (i < end && isDigit(text.charAt(i))) {
+                if (!nonZeroFraction) {
+                    if (text.charAt(i) == '0') leadingZeros++;
+                    else nonZeroFraction = true;
+                }
+                i++;
+            }
+            if (i == fractionStart || i != end) return false;
+        }
+
+        if (integerDigits > maxIntegerDigits) return false;
+        boolean nearMax = integerDigits == maxIntegerDigits;
+        boolean nearZero = integerDigits == 0 && nonZeroFraction && leadingZeros >= maxLeadingZeros;
+        if (!nearMax && !nearZero) return true;
+
+        // Right at the edge: let the JDK round it (this is the only allocating path)
+        String literal = text.subSequence(start, end).toString();
+        if (isFloat) {
+            float value = Float.parseFloat(literal);
+            return !Float.isInfinite(value) && (value != 0 || !nearZero);
+        }
+        double value = Double.parseDouble(literal);
+        return !Double.isInfinite(value) && (value != 0 || !nearZero);
+    }
+
+    // === OTHER TYPES ===
+
+    // 'x' where x is any single code point except a line terminator (what the regex '.' matched)
+    private static boolean isChar(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 3 || length > 4 || text.charAt(start) != '\'' || text.charAt(end - 1) != '\'') return false;
+        char c = text.charAt(start + 1);
+        if (length == 4) {
+            return Character.isHighSurrogate(c) && Character.isLowSurrogate(text.charAt(start + 2));
+        }
+        return c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+    }
+
+    private static boolean isString(CharSequence text, int start, int end) {
+        if (end - start < 2 || text.charAt(start) != '"' || text.charAt(end - 1) != '"') return false;
+        for (int i = start + 1; i < end - 1; i++) {
+            if (text.charAt(i) == '"') return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, int end, String word) {
+        if (end - start != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (text.charAt(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+}
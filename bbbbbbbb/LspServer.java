@@ -0,0 +1,398 @@
+package com.tam.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Language Server Protocol front end, over stdin/stdout (no network): editors get the same
+ * diagnostics the GUI shows, while typing.
+ *
+ * Usage: java com.tam.compiler.LspServer
+ * Set -Dcompiler.lspDebounceMs=N to change how long typing must pause before diagnostics
+ * are published (default 150), and -Dcompiler.maxErrors=N to cap them per document.
+ *
+ * Every open document is kept in an IncrementalAnalyzer, and didChange edits (incremental
+ * sync) are applied to it line by line as they arrive, so a keystroke re-analyzes only the
+ * lines and statements it touched. Publishing is debounced: an edit re-schedules it, and one that is
+ * already running for an older version is cancelled (interrupted) and its output dropped.
+ *
+ * Like the pipeline, diagnostics are those of the first stage that fails. Positions are
+ * UTF-16 based, as the protocol requires by default, which is what Java char offsets are.
+ * Lines are split at '\n' only; a '\r' before it is kept in the line and never reported.
+ */
+public class LspServer {
+
+    public static final long DEFAULT_DEBOUNCE_MS = Long.getLong("compiler.lspDebounceMs", 150L);
+
+    // JSON-RPC error codes
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int PARSE_ERROR = -32700;
+
+    // LSP constants
+    private static final int SYNC_INCREMENTAL = 2;
+    private static final int SEVERITY_ERROR = 1;
+
+    // One open document. Its analyzer is not thread-safe: always used while holding the lock.
+    private static class Document {
+        final String uri;
+        final IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        long version;
+        long edits;                  // bumped on every change; a publish for an older count is stale
+        Future<?> pendingPublish;
+
+        Document(String uri) {
+            this.uri = uri;
+        }
+    }
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final long debounceMillis;
+    private final Map<String, Document> documents = new HashMap<>();   // reader thread only
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsp-diagnostics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean shutdownRequested = false;
+
+    public LspServer(InputStream in, OutputStream out, long debounceMillis) {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new LspServer(System.in, System.out, DEFAULT_DEBOUNCE_MS).run());
+    }
+
+    // Serve until "exit" or the end of the input. Exit code 0 only after a proper shutdown.
+    public int run() {
+        try {
+            while (true) {
+                String body = readMessage();
+                if (body == null) return shutdownRequested ? 0 : 1;
+
+                Object message;
+                try {
+                    message = Json.parse(body);
+                } catch (IllegalArgumentException e) {
+                    sendError(null, PARSE_ERROR, e.getMessage());
+                    continue;
+                }
+                if ("exit".equals(Json.string(message, "method"))) return shutdownRequested ? 0 : 1;
+                handle(message);
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        } finally {
+            publisher.shutdownNow();
+        }
+    }
+
+    // === DISPATCH ===
+
+    private void handle(Object message) throws IOException {
+        String method = Json.string(message, "method");
+        Object id = message instanceof Map<?, ?> map ? map.get("id") : null;
+        Map<?, ?> params = Json.object(message, "params");
+        if (method == null) return;   // a response to something we never ask
+
+        if (shutdownRequested && id != null) {
+            sendError(id, INVALID_REQUEST, "Server is shutting down");
+            return;
+        }
+
+        switch (method) {
+            case "initialize" -> sendResult(id, capabilities());
+            case "shutdown" -> {
+                shutdownRequested = true;
+                for (Document document : documents.values()) cancelPublish(document);
+                sendResult(id, null);
+            }
+            case "textDocument/didOpen" -> didOpen(Json.object(params, "textDocument"));
+            case "textDocument/didChange" -> didChange(params);
+            case "textDocument/didClose" -> didClose(Json.object(params, "textDocument"));
+            default -> {
+                // Unknown notifications (initialized, $/cancelRequest, ...) need no answer
+                if (id != null) sendError(id, METHOD_NOT_FOUND, "Unsupported method " + method);
+            }
+        }
+    }
+
+    private Map<String, Object> capabilities() {
+        Map<String, Object> sync = new LinkedHashMap<>();
+        sync.put("openClose", true);
+        sync.put("change", SYNC_INCREMENTAL);
+
+        Map<String, Object> capabilities = new LinkedHashMap<>();
+        capabilities.put("textDocumentSync", sync);
+
+        Map<String, Object> serverInfo = new LinkedHashMap<>();
+        serverInfo.put("name", "tam-compiler");
+        serverInfo.put("version", String.valueOf(CompilerPipeline.ANALYZER_VERSION));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("capabilities", capabilities);
+        result.put("serverInfo", serverInfo);
+        return result;
+    }
+
+    // === DOCUMENT SYNC ===
+
+    private void didOpen(Map<?, ?> textDocument) {
+        String uri = Json.string(textDocument, "uri");
+        String text = Json.string(textDocument, "text");
+        if (uri == null || text == null) return;
+
+        Document document = new Document(uri);
+        Document previous = documents.put(uri, document);
+        if (previous != null) cancelPublish(previous);
+        synchronized (document) {
+            document.analyzer.setText(text);
+            document.version = Json.number(textDocument, "version", 0);
+        }
+        schedulePublish(document, 0);   // nothing to wait for on open
+    }
+
+    private void didChange(Map<?, ?> params) {
+        Map<?, ?> textDocument = Json.object(params, "textDocument");
+        Document document = documents.get(Json.string(textDocument, "uri"));
+        List<?> changes = Json.array(params, "contentChanges");
+        if (document == null || changes == null) return;
+
+        // Stop a publish that is running for the old text before waiting for the lock it holds
+        cancelPublish(document);
+        synchronized (document) {
+            for (Object change : changes) applyChange(document.analyzer, change);
+            document.version = Json.number(textDocument, "version", document.version + 1);
+            document.edits++;
+        }
+        schedulePublish(document, debounceMillis);
+    }
+
+    private void didClose(Map<?, ?> textDocument) throws IOException {
+        String uri = Json.string(textDocument, "uri");
+        Document document = uri == null ? null : documents.remove(uri);
+        if (document == null) return;
+        cancelPublish(document);
+        synchronized (document) {
+            document.edits++;   // a publish that already started must not resurrect the diagnostics
+        }
+        sendDiagnostics(uri, null, List.of());
+    }
+
+    // A ranged change replaces text between two positions; one without a range is the whole document
+    private static void applyChange(IncrementalAnalyzer analyzer, Object change) {
+        String text = Json.string(change, "text");
+        Map<?, ?> range = Json.object(change, "range");
+        if (text == null) return;
+        if (range == null) {
+            analyzer.setText(text);
+            return;
+        }
+
+        int[] start = position(analyzer, Json.object(range, "start"));
+        int[] end = position(analyzer, Json.object(range, "end"));
+        if (end[0] < start[0] || end[0] == start[0] && end[1] < start[1]) {
+            int[] swap = start;
+            start = end;
+            end = swap;
+        }
+        String replaced = analyzer.getLine(start[0]).substring(0, start[1]) + text
+                        + analyzer.getLine(end[0]).substring(end[1]);
+        analyzer.replaceLines(start[0], end[0] + 1, replaced);
+    }
+
+    // {line, character} clamped to the document, as editors expect positions past the end to behave
+    private static int[] position(IncrementalAnalyzer analyzer, Map<?, ?> position) {
+        long line = Json.number(position, "line", 0);
+        long character = Json.number(position, "character", 0);
+        int lastLine = analyzer.getLineCount() - 1;
+        if (line > lastLine) return new int[] { lastLine, contentLength(analyzer.getLine(lastLine)) };
+        if (line < 0) return new int[] { 0, 0 };
+
+        int index = (int) line;
+        int length = contentLength(analyzer.getLine(index));
+        return new int[] { index, (int) Math.max(0, Math.min(character, length)) };
+    }
+
+    // Length of a line without the '\r' a CRLF document leaves at its end
+    private static int contentLength(String line) {
+        return line.endsWith("\r") ? line.length() - 1 : line.length();
+    }
+
+    // === PUBLISHING ===
+
+    private void schedulePublish(Document document, long delayMillis) {
+        long edits;
+        synchronized (document) {
+            edits = document.edits;
+        }
+        document.pendingPublish = publisher.schedule(() -> publish(document, edits), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPublish(Document document) {
+        if (document.pendingPublish != null) {
+            document.pendingPublish.cancel(true);
+            document.pendingPublish = null;
+        }
+    }
+
+    // On the publisher thread
+    private void publish(Document document, long edits) {
+        List<Object> diagnostics;
+        long version;
+        try {
+            synchronized (document) {
+                if (document.edits != edits) return;   // superseded while waiting for the lock
+                diagnostics = toLsp(document.analyzer, document.analyzer.getDiagnostics());
+                version = document.version;
+            }
+            if (Thread.currentThread().isInterrupted()) return;
+            sendDiagnostics(document.uri, version, diagnostics);
+        } catch (CancellationException e) {
+            // A newer edit arrived; its own publish is on the way
+        } catch (IOException e) {
+            System.err.println("ERROR: Failed to publish diagnostics: " + e.getMessage());
+        }
+    }
+
+    private static List<Object> toLsp(IncrementalAnalyzer analyzer, Diagnostics diagnostics) {
+        List<Object> result = new ArrayList<>(diagnostics.getCollected().size());
+        for (Diagnostic diagnostic : diagnostics.getCollected()) {
+            int line = diagnostic.line - 1;
+            String text = line < analyzer.getLineCount() ? analyzer.getLine(line) : "";
+            int length = contentLength(text);
+
+            // Columns are 1-based (0 = unknown); ranges cover what the message is about
+            int start = diagnostic.column > 0 ? Math.min(diagnostic.column - 1, length) : 0;
+            int end = switch (diagnostic.code) {
+                // The quoted text (a value may go on past this line, the range stops at its end)
+                case INVALID_TOKEN, UNKNOWN_TOKEN, ALREADY_DECLARED, INVALID_VALUE, NOT_DECLARED, VALUE_OUT_OF_RANGE,
+                     DIVISION_BY_ZERO -> start + diagnostic.getArg(0).length();
+                case MISSING_SEMICOLON -> start;   // reported just after the last token
+                case INVALID_DECLARATION -> length;
+            };
+            if (diagnostic.code == Diagnostic.Code.MISSING_SEMICOLON) start = Math.max(0, start - 1);
+            if (diagnostic.column == 0) end = length;
+            end = Math.max(start, Math.min(end, length));
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("range", range(line, start, end));
+            item.put("severity", SEVERITY_ERROR);
+            item.put("code", diagnostic.code.name());
+            item.put("source", "tam " + diagnostic.getStage().toLowerCase());
+            item.put("message", diagnostic.getMessage());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> range(int line, int start, int end) {
+        Map<String, Object> range = new LinkedHashMap<>();
+        range.put("start", Map.of("line", line, "character", start));
+        range.put("end", Map.of("line", line, "character", end));
+        return range;
+    }
+
+    // === TRANSPORT ===
+    // Content-Length framed JSON-RPC 2.0, as every LSP client speaks it
+
+    private void sendDiagnostics(String uri, Long version, List<Object> diagnostics) throws IOException {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", uri);
+        if (version != null) params.put("version", version);
+        params.put("diagnostics", diagnostics);
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("method", "textDocument/publishDiagnostics");
+        message.put("params", params);
+        send(message);
+    }
+
+    private void sendResult(Object id, Object result) throws IOException {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("id", id);
+        message.put("result", result);
+        send(message);
+    }
+
+    private void sendError(Object id, int code, String text) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", text);
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("id", id);
+        message.put("error", error);
+        send(message);
+    }
+
+    // Called from the reader and the publisher thread
+    private synchronized void send(Map<String, Object> message) throws IOException {
+        byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    // The next message body, or null at the end of the input
+    private String readMessage() throws IOException {
+        int contentLength = -1;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null) return null;
+            if (header.isEmpty()) {
+                if (contentLength >= 0) break;
+                continue;   // stray blank line between messages
+            }
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad Content-Length header: " + header);
+                }
+            }
+        }
+
+        byte[] body = in.readNBytes(contentLength);
+        if (body.length < contentLength) throw new EOFException("Input ended inside a message");
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    // One ASCII header line without its CRLF, or null at the end of the input
+    private String readHeaderLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+}
@@ -0,0 +1,314 @@
+package com.tam.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs the three stages on several cores at once.
+ *
+ * The source is cut into chunks after lines that end with ';' (no statement can run on
+ * past one of those) and every chunk is lexed and parsed on a ForkJoinPool. Declarations
+ * have their values folded in parallel too, unless they use other variables. The rules that
+ * need the whole file, "already declared" and the values of those names, are applied
+ * afterwards in one sequential pass over the declarations in source order, so every error
+ * and its position in the list is identical to CompilerPipeline.run().
+ */
+public class ParallelAnalyzer {
+
+    // Characters per chunk; inputs smaller than two chunks are analyzed sequentially
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    // One parsed declarator, kept until the sequential duplicate check.
+    // A value without names is checked in the chunk: error, or the folded constant (none for a lone
+    // literal). One with names is only folded in the merge, from the chunk's tree.
+    private static class Declaration {
+        final byte type;
+        final String name;
+        final int nameLine, nameColumn;
+        final SyntaxTree tree;
+        final int value;                  // the initializer's node in tree
+        final boolean usesNames;
+        final Constant constant;
+        final Diagnostic error;
+
+        Declaration(byte type, String name, int nameLine, int nameColumn, SyntaxTree tree, int value,
+                    boolean usesNames, Constant constant, Diagnostic error) {
+            this.type = type;
+            this.name = name;
+            this.nameLine = nameLine;
+            this.nameColumn = nameColumn;
+            this.tree = tree;
+            this.value = value;
+            this.usesNames = usesNames;
+            this.constant = constant;
+            this.error = error;
+        }
+    }
+
+    // A run of whole lines [start, end) and everything found in it
+    private static class Chunk {
+        final int start, end;
+        final boolean last;
+        int firstLine;
+        TokenBuffer tokens;
+        SyntaxTree tree;
+        final Diagnostics lexicalErrors;
+        final Diagnostics syntaxErrors;
+        final List<Declaration> declarations = new ArrayList<>();
+
+        Chunk(int start, int end, boolean last, int maxLexicalErrors, int maxSyntaxErrors) {
+            this.start = start;
+            this.end = end;
+            this.last = last;
+            this.lexicalErrors = new Diagnostics(maxLexicalErrors);
+            this.syntaxErrors = new Diagnostics(maxSyntaxErrors);
+        }
+    }
+
+    private final LexicalAnalyzer lexicalAnalyzer;
+    private final SyntaxAnalyzer syntaxAnalyzer;
+    private final SemanticAnalyzer semanticAnalyzer;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelAnalyzer() {
+        this(new LexicalAnalyzer(), new SyntaxAnalyzer(), new SemanticAnalyzer(),
+             ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelAnalyzer(LexicalAnalyzer lexicalAnalyzer,
+                            SyntaxAnalyzer syntaxAnalyzer,
+                            SemanticAnalyzer semanticAnalyzer,
+                            ForkJoinPool pool,
+                            int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        this.lexicalAnalyzer = lexicalAnalyzer;
+        this.syntaxAnalyzer = syntaxAnalyzer;
+        this.semanticAnalyzer = semanticAnalyzer;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public CompilerPipeline.Result analyze(String code) {
+        if (code == null || code.length() < 2L * chunkSize) {
+            return new CompilerPipeline(lexicalAnalyzer, syntaxAnalyzer, semanticAnalyzer).run(code);
+        }
+        if (LexicalAnalyzer.isBlank(code)) {
+            return new CompilerPipeline.Result(lexicalAnalyzer.analyze(code), null, null);
+        }
+
+        // Recorded as a JFR event (see AnalysisEvents); smaller inputs record the Pipeline one above
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        CompilerPipeline.Result result = analyzeChunks(code);
+        AnalysisEvents.commitPipeline(event, "Parallel", code, result);
+        return result;
+    }
+
+    private CompilerPipeline.Result analyzeChunks(String code) {
+        // 1. Cut the source into chunks that end right after a newline that closes every statement
+        List<Chunk> chunkList = new ArrayList<>();
+        int start = 0;
+        while (start < code.length()) {
+            int newline = start + chunkSize < code.length() ? statementBoundary(code, start + chunkSize) : -1;
+            int end = newline < 0 ? code.length() : newline + 1;
+            chunkList.add(new Chunk(start, end, end == code.length(),
+                                    lexicalAnalyzer.getMaxErrors(), syntaxAnalyzer.getMaxErrors()));
+            start = end;
+        }
+        Chunk[] chunks = chunkList.toArray(new Chunk[0]);
+
+        // 2. Count lines per chunk in parallel, then give every chunk its first line number
+        pool.invoke(new ChunkTask(code, chunks, 0, chunks.length, true));
+        int line = 1;
+        for (Chunk chunk : chunks) {
+            int newlines = chunk.firstLine;
+            chunk.firstLine = line;
+            line += newlines;
+        }
+
+        // 3. The real work: lex, syntax-check and validate every chunk in parallel
+        pool.invoke(new ChunkTask(code, chunks, 0, chunks.length, false));
+
+        // 4. Merge in line order
+        return merge(code, chunks);
+    }
+
+    // The first newline at or after from that follows a ';' (trailing whitespace aside), or -1.
+    // If the file lexes cleanly that ';' is the last token of its line, so no statement crosses it;
+    // if it does not, only the lexical errors are reported and where we cut does not matter.
+    private static int statementBoundary(String code, int from) {
+        for (int newline = code.indexOf('\n', from); newline >= 0; newline = code.indexOf('\n', newline + 1)) {
+            int last = newline - 1;
+            while (last >= 0 && code.charAt(last) <= ' ') last--;
+            if (last >= 0 && code.charAt(last) == ';') return newline;
+        }
+        return -1;
+    }
+
+    // Serializable only because every ForkJoinTask is; it never leaves this JVM
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveAction {
+        private final String code;
+        private final Chunk[] chunks;
+        private final int from, to;
+        private final boolean countOnly;
+
+        ChunkTask(String code, Chunk[] chunks, int from, int to, boolean countOnly) {
+            this.code = code;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.countOnly = countOnly;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (countOnly) countLines(code, chunks[from]);
+                else analyzeChunk(code, chunks[from]);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(code, chunks, from, mid, countOnly),
+                      new ChunkTask(code, chunks, mid, to, countOnly));
+        }
+    }
+
+    // Until the line numbers are assigned, firstLine holds the number of newlines in the chunk
+    private static void countLines(String code, Chunk chunk) {
+        int count = 0;
+        for (int i = code.indexOf('\n', chunk.start); i >= 0 && i < chunk.end; i = code.indexOf('\n', i + 1)) {
+            count++;
+        }
+        chunk.firstLine = count;
+    }
+
+    private void analyzeChunk(String code, Chunk chunk) {
+        TokenBuffer tokens = new TokenBuffer(code, Math.max(16, (chunk.end - chunk.start) / 8));
+        chunk.tokens = tokens;
+
+        int lineStart = chunk.start;
+        int lineNum = chunk.firstLine;
+        while (true) {
+            int newline = code.indexOf('\n', lineStart);
+            if (newline >= chunk.end) newline = -1;
+            int lineEnd = newline < 0 ? chunk.end : newline;
+
+            lexicalAnalyzer.scanLine(code, lineStart, lineEnd, lineNum, tokens, chunk.lexicalErrors);
+
+            if (newline < 0) break;
+            lineStart = newline + 1;
+            // The last line of the file may be empty, every other chunk stops at its final newline
+            if (lineStart == chunk.end && !chunk.last) break;
+            lineNum++;
+        }
+
+        // Same gating as CompilerPipeline, but only this chunk is known here.
+        // A chunk ends where no statement is open, so its end is the end of input for the parser.
+        SyntaxTree tree = new SyntaxTree(tokens, Math.max(16, tokens.size() / 2));
+        chunk.tree = tree;
+        if (!chunk.lexicalErrors.isEmpty()) return;
+        SyntaxAnalyzer.Parser parser = new SyntaxAnalyzer.Parser(tokens, tree, chunk.syntaxErrors);
+        parser.advance(tokens.size());
+        parser.finish();
+        if (!chunk.syntaxErrors.isEmpty()) return;
+
+        ConstantFolder folder = new ConstantFolder();
+        Diagnostics errors = new Diagnostics(1);
+        for (int i = 0; i < tree.statementCount(); i++) {
+            int declaration = tree.statement(i);
+            int typeToken = tree.token(declaration);
+            byte type = SymbolTable.typeOf(code, tokens.start(typeToken), tokens.end(typeToken));
+            for (int declarator = tree.firstChild(declaration); declarator >= 0; declarator = tree.nextSibling(declarator)) {
+                int name = tree.token(declarator);
+                int value = tree.firstChild(declarator);
+                boolean usesNames = ConstantFolder.hasNames(tree, value);
+                Constant constant = null;
+                boolean valid = true;
+                if (ConstantFolder.isLiteral(tree, value)) {
+                    valid = ConstantFolder.checkLiteral(tree, value, type, errors);
+                } else if (!usesNames) {
+                    constant = folder.fold(tree, value, type, ConstantFolder.NO_NAMES, errors);
+                    valid = constant != null;
+                }
+                Diagnostic error = null;
+                if (!valid) {
+                    error = errors.getCollected().get(0);
+                    errors = new Diagnostics(1);
+                }
+                chunk.declarations.add(new Declaration(type, tokens.value(name).toString(), tokens.line(name),
+                        tokens.column(name), tree, value, usesNames, constant, error));
+            }
+        }
+    }
+
+    private CompilerPipeline.Result merge(String code, Chunk[] chunks) {
+        Diagnostics lexicalErrors = new Diagnostics(lexicalAnalyzer.getMaxErrors());
+        for (Chunk chunk : chunks) lexicalErrors.addAll(chunk.lexicalErrors);
+
+        TokenBuffer tokens;
+        SyntaxTree tree;
+        if (lexicalErrors.isEmpty()) {
+            int total = 0;
+            int nodes = 0;
+            for (Chunk chunk : chunks) {
+                total += chunk.tokens.size();
+                nodes += chunk.tree.size();
+            }
+            tokens = new TokenBuffer(code, total);
+            tree = new SyntaxTree(tokens, nodes);
+            for (Chunk chunk : chunks) {
+                tree.addAll(chunk.tree, tokens.size());
+                tokens.addAll(chunk.tokens);
+            }
+        } else {
+            tokens = new TokenBuffer(code, 0);
+            tree = new SyntaxTree(tokens, 0);
+        }
+
+        LexicalAnalyzer.Result lexical = lexicalAnalyzer.toResult(code, tokens, lexicalErrors);
+        if (!lexical.success) {
+            return new CompilerPipeline.Result(lexical, null, null);
+        }
+
+        Diagnostics syntaxErrors = new Diagnostics(syntaxAnalyzer.getMaxErrors());
+        for (Chunk chunk : chunks) syntaxErrors.addAll(chunk.syntaxErrors);
+        SyntaxAnalyzer.Result syntax = syntaxAnalyzer.toResult(tree, syntaxErrors);
+        if (!syntax.success) {
+            return new CompilerPipeline.Result(lexical, syntax, null);
+        }
+
+        // Duplicate Declaration Check, in source order, exactly like SemanticAnalyzer.analyze().
+        // Values that use names are folded here, once the declarations before them are known.
+        Diagnostics semanticErrors = new Diagnostics(semanticAnalyzer.getMaxErrors());
+        SymbolTable symbols = new SymbolTable(code);
+        ConstantFolder folder = new ConstantFolder();
+        ConstantFolder.Scope scope = ConstantFolder.scopeOf(symbols);
+        for (Chunk chunk : chunks) {
+            for (Declaration declaration : chunk.declarations) {
+                if (symbols.find(declaration.name) >= 0) {
+                    semanticErrors.add(Diagnostic.Code.ALREADY_DECLARED, declaration.nameLine, declaration.nameColumn,
+                                       declaration.name);
+                    continue;
+                }
+                if (declaration.error != null) {
+                    semanticErrors.add(declaration.error);
+                    continue;
+                }
+                Constant constant = declaration.constant;
+                if (declaration.usesNames) {
+                    constant = folder.fold(declaration.tree, declaration.value, declaration.type, scope,
+                                           semanticErrors);
+                    if (constant == null) continue;
+                }
+                symbols.add(declaration.name, 0, declaration.name.length(), declaration.type,
+                            declaration.tree.sourceStart(declaration.value),
+                            declaration.tree.sourceEnd(declaration.value), constant, declaration.nameLine);
+            }
+        }
+        return new CompilerPipeline.Result(lexical, syntax, semanticAnalyzer.toResult(symbols, semanticErrors));
+    }
+}
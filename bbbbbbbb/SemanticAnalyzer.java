@@ -1,10 +1,7 @@
 package com.tam.compiler;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 public class SemanticAnalyzer {
 
@@ -23,139 +20,119 @@ public class SemanticAnalyzer {
     
     public static class Result {
         public final boolean success;
-        public final String message;
-        public final Map<String, VariableInfo> variables;
-        public final List<String> errors;
+        public final SymbolTable symbols;
+        public final Map<String, VariableInfo> variables;   // read-only view of symbols, built on demand
+        public final List<Diagnostic> diagnostics;  // at most maxErrors of them
+        public final int errorCount;                // every error, including the ones not kept
+        private final String title;
         
-        public Result(boolean success, String message, Map<String, VariableInfo> variables, List<String> errors) {
+        public Result(boolean success, String title, SymbolTable symbols, Diagnostics errors) {
             this.success = success;
-            this.message = message;
-            this.variables = variables;
-            this.errors = errors;
+            this.title = title;
+            this.symbols = symbols;
+            this.variables = symbols.asMap();
+            this.diagnostics = errors.getCollected();
+            this.errorCount = errors.getCount();
         }
-    }
-    
-    private final Map<String, Pattern> typeChecks = new HashMap<>();
-
-    // Regex to break down a line into: TYPE | NAME | VALUE
-    private final Pattern declarationPattern = 
-        Pattern.compile("^(int|double|float|char|boolean|byte|short|long|String)\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s*=\\s*(.+)$");
-
-    public SemanticAnalyzer() {
-        // === INITIALIZE TYPE RULES ===
-
-        // Integers: Whole numbers (pos/neg)
-        typeChecks.put("int", Pattern.compile("^-?\\d+$"));
-        typeChecks.put("byte", Pattern.compile("^-?\\d+$"));
-        typeChecks.put("short", Pattern.compile("^-?\\d+$"));
-
-        // Longs: Whole numbers, optionally ending with 'l' or 'L'
-        typeChecks.put("long", Pattern.compile("^-?\\d+[lL]?$"));
-
-        // Doubles: Decimals, optionally ending with 'd'
-        typeChecks.put("double", Pattern.compile("^-?\\d+(\\.\\d+)?[dD]?$"));
 
-        // Floats: Must have 'f' suffix (1.5f) OR be a whole number (implicit cast)
-        typeChecks.put("float", Pattern.compile("^-?\\d+(\\.\\d+)?[fF]$|^-?\\d+$"));
+        public String getTitle() { return title; }
 
-        // Chars: Single character in single quotes
-        typeChecks.put("char", Pattern.compile("^'.'$"));
+        // The text shown to the user, only built when asked for
+        public String getMessage() {
+            return Diagnostics.formatMessage(title, diagnostics, errorCount);
+        }
+    }
+    
+    private int maxErrors = Diagnostics.DEFAULT_MAX_ERRORS;
 
-        // Booleans: strict true or false
-        typeChecks.put("boolean", Pattern.compile("^(true|false)$"));
+    public int getMaxErrors() { return maxErrors; }
+    public void setMaxErrors(int maxErrors) { this.maxErrors = Math.max(1, maxErrors); }
 
-        // Strings: anything inside double quotes
-        typeChecks.put("String", Pattern.compile("^\"[^\"]*\"$"));
+    public Result analyze(String code) {
+        // Recorded as a JFR event (see AnalysisEvents)
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        Result result = check(code);
+        AnalysisEvents.commitStage(event, "Semantic", code, 0, result.errorCount, result.success);
+        return result;
     }
 
-    public Result analyze(String code) {
+    private Result check(String code) {
         if (code == null || code.trim().isEmpty()) {
-            return new Result(false, "No code to analyze", new HashMap<>(), new ArrayList<>());
+            return new Result(false, "No code to analyze", new SymbolTable("", 0), new Diagnostics(maxErrors));
         }
 
-        String[] lines = code.split("\n");
-        List<String> errors = new ArrayList<>();
-        Map<String, VariableInfo> variables = new HashMap<>();
-
-        for (int lineNum = 0; lineNum < lines.length; lineNum++) {
-            String line = lines[lineNum].trim();
-            if (line.isEmpty()) continue;
+        // Only the statements that parse are looked at; the Syntax stage reports the others
+        SyntaxTree tree = SyntaxAnalyzer.parseSource(code, new Diagnostics(1));
+        Diagnostics errors = new Diagnostics(maxErrors);
+        SymbolTable symbols = new SymbolTable(code);
+        ConstantFolder folder = new ConstantFolder();
+        for (int i = 0; i < tree.statementCount(); i++) {
+            if ((i & 1023) == 1023) Cancellation.throwIfCancelled();
+            checkDeclaration(tree, tree.statement(i), symbols, folder, errors);
+        }
 
-            // We only strip the semicolon if it's the very last character
-            // This prevents accidental deletion of semicolons inside strings (e.g. "Error;")
-            String cleanLine = line;
-            if (cleanLine.endsWith(";")) {
-                cleanLine = cleanLine.substring(0, cleanLine.length() - 1).trim();
-            }
+        return toResult(symbols, errors);
+    }
 
-            // Parse the line into components (Type, Name, Value)
-            var matcher = declarationPattern.matcher(cleanLine);
+    // === TREE-DRIVEN CHECK (used by CompilerPipeline) ===
+    // One DECLARATION node: its declarators are checked in order, each as if declared on its own.
+    // Names are looked up straight from the source, without building a String for them.
+    void checkDeclaration(SyntaxTree tree, int declaration, SymbolTable symbols, ConstantFolder folder,
+                          Diagnostics errors) {
+        TokenBuffer tokens = tree.getTokens();
+        CharSequence text = tokens.getSource();
 
-            if (!matcher.matches()) continue;
+        // The Lexer only marks the nine type names as KEYWORD, so this is always a valid ordinal
+        int typeToken = tree.token(declaration);
+        byte type = SymbolTable.typeOf(text, tokens.start(typeToken), tokens.end(typeToken));
 
-            String type = matcher.group(1);
-            String name = matcher.group(2);
-            String value = matcher.group(3).trim();
+        for (int declarator = tree.firstChild(declaration); declarator >= 0; declarator = tree.nextSibling(declarator)) {
+            int name = tree.token(declarator);
+            int nameStart = tokens.start(name);
+            int nameEnd = tokens.end(name);
 
             //Duplicate Declaration Check
             // You cannot declare the same variable name twice in the same scope.
-            if (variables.containsKey(name)) {
-                errors.add("Line " + (lineNum + 1) + ": '" + name + "' already declared.");
+            if (symbols.find(text, nameStart, nameEnd) >= 0) {
+                errors.add(Diagnostic.Code.ALREADY_DECLARED, tokens.line(name), tokens.column(name), text, nameStart, nameEnd);
                 continue;
             }
-            //RULE 2: Type Compatibility Check
-            // Does the value match the specific Regex for that type?
-            if (!isValidValueForType(type, value)) {
-                errors.add("Line " + (lineNum + 1) + ": Invalid value '" + value + "' for type '" + type + "'");
-                continue;
+
+            //Type Compatibility Check
+            // The initializer is folded to a value of the declared type (see ConstantFolder);
+            // the names in it are the variables declared so far. A lone literal is only checked.
+            int value = tree.firstChild(declarator);
+            Constant constant = null;
+            if (ConstantFolder.isLiteral(tree, value)) {
+                if (!ConstantFolder.checkLiteral(tree, value, type, errors)) continue;
+            } else {
+                constant = folder.fold(tree, value, type, ConstantFolder.scopeOf(symbols), errors);
+                if (constant == null) continue;
             }
 
-            variables.put(name, new VariableInfo(type, value, lineNum + 1));
+            int valueStart = tree.sourceStart(value);
+            int valueEnd = tree.sourceEnd(value);
+            if (text == symbols.getSource()) {
+                symbols.add(text, nameStart, nameEnd, type, valueStart, valueEnd, constant, tokens.line(name));
+            } else {
+                symbols.addCopied(text, nameStart, nameEnd, type, text, valueStart, valueEnd, constant, tokens.line(name));
+            }
         }
+    }
 
+    Result toResult(SymbolTable symbols, Diagnostics errors) {
         if (!errors.isEmpty()) {
-            return new Result(false, "Semantic Analysis Failed!\n\n" + String.join("\n", errors), 
-                            new HashMap<>(), errors);
+            return new Result(false, "Semantic Analysis Failed!", new SymbolTable("", 0), errors);
         }
 
-        return new Result(true, "Semantic Analysis Passed!", variables, new ArrayList<>());
+        return new Result(true, "Semantic Analysis Passed!", symbols, errors);
     }
 
     // === TYPE VALIDATION LOGIC ===
-    private boolean isValidValueForType(String type, String value) {
-        // Basic Regex Check (Format check)
-        Pattern pattern = typeChecks.get(type);
-        if (pattern == null || !pattern.matcher(value).matches()) {
-            return false;
-        }
-
-        // Range Check (Logic check)
-        // e.g., 1000 is a valid integer format, but too big for a byte (-128 to 127)
-        try {
-            switch (type) {
-                case "byte":
-                    if (value.matches("-?\\d+")) {
-                        long val = Long.parseLong(value);
-                        return val >= -128 && val <= 127;
-                    }
-                    break;
-                case "short":
-                    if (value.matches("-?\\d+")) {
-                        long val = Long.parseLong(value);
-                        return val >= -32768 && val <= 32767;
-                    }
-                    break;
-                case "int":
-                    if (value.matches("-?\\d+")) {
-                        long val = Long.parseLong(value);
-                        return val >= -2147483648L && val <= 2147483647L;
-                    }
-                    break;
-            }
-        } catch (NumberFormatException e) {
-            return false; // Number is too big for Java to even parse (Overflow)
-        }
-
-        return true;
+    // Format and range rules of a single literal live in LiteralChecker
+    boolean isValidValueForType(String type, String value) {
+        byte ordinal = SymbolTable.typeOf(type);
+        return ordinal >= 0 && LiteralChecker.isValid(ordinal, value, 0, value.length());
     }
-}
\ No newline at end of file
+}
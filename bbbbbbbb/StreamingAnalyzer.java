@@ -0,0 +1,130 @@
+package com.tam.compiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Analyzes a file straight from disk, for sources too big to load into a String.
+ *
+ * The file is memory-mapped one window at a time and every line is decoded into a
+ * small reusable buffer, run through the same pipeline pass as CompilerPipeline,
+ * and then forgotten. What stays in memory is the symbol table, the error messages
+ * (up to the limit, see Diagnostics) and the text and tokens of a statement that is
+ * still open, for as long as it can still be a declaration. One that cannot (it does not
+ * start with "TYPE NAME =") is reduced to where it started and where its last token
+ * ended, however many lines it runs on. So heap usage grows with the number of
+ * declared variables and the longest declaration, not with the size of the file.
+ *
+ * Because tokens are not kept, the lexical Result carries an empty TokenBuffer (and the
+ * syntax Result an empty tree), and declared values are copied into the SymbolTable
+ * instead of pointing into the source.
+ */
+public class StreamingAnalyzer {
+
+    // How much of the file is mapped at once
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final CompilerPipeline pipeline;
+    private final int windowSize;
+
+    public StreamingAnalyzer() {
+        this(new CompilerPipeline(), DEFAULT_WINDOW_SIZE);
+    }
+
+    public StreamingAnalyzer(CompilerPipeline pipeline, int windowSize) {
+        if (windowSize <= 0) throw new IllegalArgumentException("windowSize must be positive");
+        this.pipeline = pipeline;
+        this.windowSize = windowSize;
+    }
+
+    public CompilerPipeline.Result analyze(Path file) throws IOException {
+        // Recorded as a JFR event (see AnalysisEvents), with the characters and lines counted on the way
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        long chars = 0;
+        int lineNum = 0;
+
+        // Strict UTF-8, the same way Files.readString() reads the file in the UI
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        // The lines the tokens of the open statement point into, if any; otherwise just the current line
+        StringBuilder text = new StringBuilder();
+        CompilerPipeline.Pass pass = pipeline.new Pass("", new TokenBuffer(text), false);
+        CharBuffer lineChars = CharBuffer.allocate(1024);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long windowStart = 0;
+            long window = windowSize;
+
+            while (windowStart < size) {
+                int length = (int) Math.min(window, size - windowStart);
+                boolean lastWindow = windowStart + length == size;
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+
+                int pos = 0;
+                while (pos < length) {
+                    int newline = indexOfNewline(bytes, pos, length);
+                    // The rest of this line lives in the next window, map again starting from it
+                    if (newline < 0 && !lastWindow) break;
+                    int lineEnd = newline < 0 ? length : newline;
+
+                    // Grow the decode buffer for unusually long lines (UTF-8 never gives more chars than bytes)
+                    if (lineEnd - pos > lineChars.capacity()) {
+                        lineChars = CharBuffer.allocate(Math.max(lineEnd - pos, lineChars.capacity() * 2));
+                    }
+                    decode(decoder, bytes.slice(pos, lineEnd - pos), lineChars);
+                    chars += lineChars.remaining() + (newline < 0 ? 0 : 1);
+
+                    lineNum++;
+                    if (!pass.holdsTokens()) text.setLength(0);
+                    int lineStart = text.length();
+                    text.append(lineChars).append('\n');
+                    pass.line(text, lineStart, text.length() - 1, lineNum);
+                    pos = newline < 0 ? length : newline + 1;
+                }
+
+                if (pos == 0 && !lastWindow) {
+                    // A single line bigger than the whole window: try again with a bigger window
+                    if (window >= Integer.MAX_VALUE) throw new IOException("Line " + (lineNum + 1) + " is too long to analyze");
+                    window = Math.min((long) Integer.MAX_VALUE, window * 2);
+                    continue;
+                }
+                windowStart += pos;
+                window = windowSize;
+            }
+        }
+
+        CompilerPipeline.Result result = pass.finish("");
+        AnalysisEvents.commitPipeline(event, "Streaming", chars, lineNum, result);
+        return result;
+    }
+
+    private static int indexOfNewline(ByteBuffer bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static void decode(CharsetDecoder decoder, ByteBuffer in, CharBuffer out) throws IOException {
+        decoder.reset();
+        out.clear();
+        CoderResult result = decoder.decode(in, out, true);
+        if (!result.isUnderflow()) result.throwException();
+        result = decoder.flush(out);
+        if (!result.isUnderflow()) result.throwException();
+        out.flip();
+    }
+}
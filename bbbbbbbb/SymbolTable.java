@@ -0,0 +1,347 @@
+package com.tam.compiler;
+
+import java.nio.CharBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * The declared variables, stored the same way TokenBuffer stores tokens: parallel arrays
+ * instead of one HashMap entry + VariableInfo + three Strings per variable.
+ *
+ *  - names are copied once into a shared char pool
+ *  - the type is a byte ordinal (INT, BYTE, ... STRING)
+ *  - the value as written is a start/end offset into the analyzed source, so it is never copied
+ *  - next to it the value the Semantic stage checked (and folded, see ConstantFolder), in one
+ *    primitive slot: the integral value of a byte, short, int or long, a char's code point,
+ *    1 or 0 for a boolean, the raw bits of a float or double (a float widened, exactly).
+ *    The typed accessors read it without parsing or allocating anything, so using a variable
+ *    in a later initializer (or in CodeGenerator) never looks at its text again. Only Strings
+ *    are objects: a folded one is kept, a literal one is cut out of the source on first use.
+ *  - lookups go through an open-addressing hash index (linear probing), no boxing
+ *
+ * Symbols keep their declaration order. asMap() gives the old Map<String, VariableInfo>
+ * view for the UI; its entries are built on demand.
+ *
+ * When a value does not come from the table's source (StreamingAnalyzer reuses one small
+ * buffer for every line) addCopied() puts its characters into the pool as well.
+ */
+public class SymbolTable {
+
+    // === TYPE ORDINALS ===
+    public static final byte INT = 0;
+    public static final byte BYTE = 1;
+    public static final byte SHORT = 2;
+    public static final byte LONG = 3;
+    public static final byte FLOAT = 4;
+    public static final byte DOUBLE = 5;
+    public static final byte CHAR = 6;
+    public static final byte BOOLEAN = 7;
+    public static final byte STRING = 8;
+
+    private static final String[] TYPE_NAMES = {
+        "int", "byte", "short", "long", "float", "double", "char", "boolean", "String"
+    };
+
+    private final CharSequence source;
+
+    // All names (and copied values) back to back
+    private char[] pool = new char[256];
+    private int poolSize = 0;
+
+    // One entry per symbol, in declaration order.
+    // A value offset >= 0 points into source; a negative one is ~offset into the pool.
+    private int[] nameStarts, nameLengths, hashes, valueStarts, valueEnds, lines;
+    private byte[] types;
+    private long[] values;      // see above; 0 for a String
+    private String[] strings;   // String values only, null until read if the value is a literal
+    private int size = 0;
+
+    // Open-addressing index: symbol index + 1, 0 = empty slot. Kept at most half full.
+    private int[] slots;
+
+    private Map<String, SemanticAnalyzer.VariableInfo> mapView;
+
+    public SymbolTable(CharSequence source) {
+        this(source, 16);
+    }
+
+    public SymbolTable(CharSequence source, int expectedSize) {
+        this.source = source;
+        int capacity = Math.max(4, expectedSize);
+        nameStarts = new int[capacity];
+        nameLengths = new int[capacity];
+        hashes = new int[capacity];
+        valueStarts = new int[capacity];
+        valueEnds = new int[capacity];
+        lines = new int[capacity];
+        types = new byte[capacity];
+        values = new long[capacity];
+        strings = new String[capacity];
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    // === LOOKUP ===
+
+    // Index of the symbol named text[start, end), or -1. Nothing is allocated.
+    public int find(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (hashes[index] == hash && nameEquals(index, text, start, end)) return index;
+        }
+        return -1;
+    }
+
+    public int find(String name) {
+        return find(name, 0, name.length());
+    }
+
+    public boolean contains(CharSequence text, int start, int end) {
+        return find(text, start, end) >= 0;
+    }
+
+    // === INSERT ===
+
+    // Add a symbol that is not in the table yet (callers check with find() first).
+    // The name is text[nameStart, nameEnd); the value is source[valueStart, valueEnd) and is not copied.
+    // The constant may be null if the value is a literal LiteralChecker accepts for the type.
+    public int add(CharSequence text, int nameStart, int nameEnd, byte type,
+                   int valueStart, int valueEnd, Constant constant, int line) {
+        int index = addName(text, nameStart, nameEnd, type, line);
+        valueStarts[index] = valueStart;
+        valueEnds[index] = valueEnd;
+        setValue(index, constant, source, valueStart, valueEnd);
+        return index;
+    }
+
+    // Same, for a value that lives somewhere other than our source: its characters are copied
+    public int addCopied(CharSequence text, int nameStart, int nameEnd, byte type,
+                         CharSequence valueText, int valueStart, int valueEnd, Constant constant, int line) {
+        int index = addName(text, nameStart, nameEnd, type, line);
+        int pooled = copyToPool(valueText, valueStart, valueEnd);
+        valueStarts[index] = ~pooled;
+        valueEnds[index] = ~(pooled + valueEnd - valueStart);
+        setValue(index, constant, valueText, valueStart, valueEnd);
+        return index;
+    }
+
+    public int add(String name, byte type, String value, Constant constant, int line) {
+        return addCopied(name, 0, name.length(), type, value, 0, value.length(), constant, line);
+    }
+
+    private int addName(CharSequence text, int nameStart, int nameEnd, byte type, int line) {
+        if (size == types.length) grow();
+        if ((size + 1) * 2 > slots.length) rehash(slots.length * 2);
+
+        int index = size++;
+        nameStarts[index] = copyToPool(text, nameStart, nameEnd);
+        nameLengths[index] = nameEnd - nameStart;
+        hashes[index] = hash(text, nameStart, nameEnd);
+        types[index] = type;
+        lines[index] = line;
+        insertSlot(index);
+        return index;
+    }
+
+    // Fills the value slot: from the folded constant, or by parsing the literal valueText[start, end)
+    // (a String literal is left to stringValue())
+    private void setValue(int index, Constant constant, CharSequence valueText, int start, int end) {
+        byte type = types[index];
+        if (constant != null) {
+            if (type == STRING) strings[index] = constant.toString();
+            else values[index] = constant.bits();
+        } else if (type != STRING) {
+            values[index] = ConstantFolder.literalBits(type, valueText, start, end);
+        }
+    }
+
+    // === ACCESSORS ===
+
+    public CharSequence getSource() { return source; }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public byte type(int index) { return types[index]; }
+    public String typeName(int index) { return TYPE_NAMES[types[index]]; }
+    public int line(int index) { return lines[index]; }
+
+    // === VALUES ===
+    // Straight from the slot, nothing parsed or allocated. longValue() and intValue() are for
+    // byte, short, int, long, char (its code point) and boolean (1 or 0), doubleValue() and
+    // floatValue() for float and double; asked for the other kind they convert like a Java cast.
+    public long longValue(int index) {
+        return isFloating(types[index]) ? (long) Double.longBitsToDouble(values[index]) : values[index];
+    }
+
+    public int intValue(int index) { return (int) longValue(index); }
+
+    public double doubleValue(int index) {
+        return isFloating(types[index]) ? Double.longBitsToDouble(values[index]) : values[index];
+    }
+
+    public float floatValue(int index) { return (float) doubleValue(index); }
+    public int charValue(int index) { return (int) values[index]; }   // a code point, may be outside the BMP
+    public boolean booleanValue(int index) { return values[index] != 0; }
+
+    // The value of a String symbol, quotes removed. A literal is cut out of the source once, then kept.
+    public String stringValue(int index) {
+        String string = strings[index];
+        if (string == null) {
+            int start = valueStarts[index];
+            string = start >= 0
+                    ? source.subSequence(start + 1, valueEnds[index] - 1).toString()
+                    : new String(pool, ~start + 1, ~valueEnds[index] - ~start - 2);
+            strings[index] = string;
+        }
+        return string;
+    }
+
+    private static boolean isFloating(byte type) {
+        return type == FLOAT || type == DOUBLE;
+    }
+
+    public String name(int index) {
+        return new String(pool, nameStarts[index], nameLengths[index]);
+    }
+
+    // The value as written in the source, as a view (no copy is made)
+    public CharSequence value(int index) {
+        int start = valueStarts[index];
+        if (start >= 0) return CharBuffer.wrap(source, start, valueEnds[index]);
+        return CharBuffer.wrap(pool, ~start, ~valueEnds[index] - ~start);
+    }
+
+    public static String nameOf(byte type) { return TYPE_NAMES[type]; }
+
+    // Ordinal of a type keyword, or -1 if text[start, end) is not one of the nine types
+    public static byte typeOf(CharSequence text, int start, int end) {
+        for (byte type = 0; type < TYPE_NAMES.length; type++) {
+            String name = TYPE_NAMES[type];
+            if (name.length() == end - start && regionEquals(text, start, name)) return type;
+        }
+        return -1;
+    }
+
+    public static byte typeOf(String name) {
+        return typeOf(name, 0, name.length());
+    }
+
+    // === MAP VIEW ===
+    // Read-only, in declaration order. VariableInfo objects are created only when looked at.
+    public Map<String, SemanticAnalyzer.VariableInfo> asMap() {
+        if (mapView == null) mapView = new MapView();
+        return mapView;
+    }
+
+    private SemanticAnalyzer.VariableInfo variableInfo(int index) {
+        return new SemanticAnalyzer.VariableInfo(typeName(index), value(index).toString(), lines[index]);
+    }
+
+    private class MapView extends AbstractMap<String, SemanticAnalyzer.VariableInfo> {
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String name && find(name) >= 0;
+        }
+
+        @Override
+        public SemanticAnalyzer.VariableInfo get(Object key) {
+            if (!(key instanceof String name)) return null;
+            int index = find(name);
+            return index < 0 ? null : variableInfo(index);
+        }
+
+        @Override
+        public Set<Entry<String, SemanticAnalyzer.VariableInfo>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() { return size; }
+
+                @Override
+                public Iterator<Entry<String, SemanticAnalyzer.VariableInfo>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() { return next < size; }
+
+                        @Override
+                        public Entry<String, SemanticAnalyzer.VariableInfo> next() {
+                            if (next >= size) throw new NoSuchElementException();
+                            int index = next++;
+                            return new SimpleImmutableEntry<>(name(index), variableInfo(index));
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    // === INTERNALS ===
+
+    private int copyToPool(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        int offset = poolSize;
+        for (int i = 0; i < length; i++) pool[offset + i] = text.charAt(start + i);
+        poolSize += length;
+        return offset;
+    }
+
+    private boolean nameEquals(int index, CharSequence text, int start, int end) {
+        if (nameLengths[index] != end - start) return false;
+        int offset = nameStarts[index];
+        for (int i = start; i < end; i++) {
+            if (pool[offset++] != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void insertSlot(int index) {
+        int mask = slots.length - 1;
+        int slot = hashes[index] & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = index + 1;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        nameStarts = Arrays.copyOf(nameStarts, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        valueStarts = Arrays.copyOf(valueStarts, capacity);
+        valueEnds = Arrays.copyOf(valueEnds, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        types = Arrays.copyOf(types, capacity);
+        values = Arrays.copyOf(values, capacity);
+        strings = Arrays.copyOf(strings, capacity);
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int i = 0; i < size; i++) insertSlot(i);
+    }
+
+    // String.hashCode() over a range, with the high bits folded in so linear probing spreads well
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + text.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (text.charAt(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -1,61 +1,423 @@
 package com.tam.compiler;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
+/*
+ * The Syntax stage: a recursive-descent parser over the Lexer's tokens that builds a SyntaxTree.
+ *
+ *   declaration := TYPE declarator (',' declarator)* ';'
+ *   declarator  := NAME '=' value
+ *   value       := expression | malformed
+ *   expression  := term (('+' | '-') term)*
+ *   term        := unary (('*' | '/' | '%') unary)*
+ *   unary       := ('+' | '-') unary | primary
+ *   primary     := NUMBER | STRING | CHAR | 'true' | 'false' | NAME | '(' expression ')'
+ *
+ * TYPE is one of the nine type keywords, NAME any word (the type names included, as the old line
+ * regex allowed). Lines mean nothing to the grammar: a ';' ends a statement, so a line may hold
+ * several statements and a statement may run over several lines. Parentheses and signs may nest
+ * MAX_NESTING deep, which keeps the recursion far from the end of the stack.
+ *
+ * A value runs up to the statement's last ';', or up to a ',' followed by NAME '=' (which starts
+ * the next declarator). If its tokens are not one expression (1e3, 12abc, "a" "b", y z, 1,000, or
+ * parentheses nested too deep) they are kept as one MALFORMED node: this stage accepts the
+ * statement and the Semantic stage reports the invalid value, as it did before values were parsed.
+ * A run of ';' on one line ends the statement at the last of them, so in "int x = 5;;" the value
+ * is "5;" and again an invalid value for the Semantic stage, not a second statement.
+ *
+ * Errors, one per statement:
+ *  - a type keyword that starts a later line once a value has begun opens the next statement,
+ *    and the one before it is missing its semicolon (so is a statement cut off by the end of input);
+ *    reported just after its last token
+ *  - anything else that does not fit "TYPE NAME = value" is an invalid declaration (an empty value
+ *    included), reported at the statement's first token
+ */
 public class SyntaxAnalyzer {
-    
+
     public static class Result {
         public final boolean success;
-        public final String message;
-        public final List<String> errors;
-        
-        public Result(boolean success, String message, List<String> errors) {
+        public final SyntaxTree tree;               // empty if the stage failed
+        public final List<Diagnostic> diagnostics;  // at most maxErrors of them
+        public final int errorCount;                // every error, including the ones not kept
+        private final String title;
+
+        public Result(boolean success, String title, SyntaxTree tree, Diagnostics errors) {
             this.success = success;
-            this.message = message;
-            this.errors = errors;
+            this.title = title;
+            this.tree = tree;
+            this.diagnostics = errors.getCollected();
+            this.errorCount = errors.getCount();
+        }
+
+        public String getTitle() { return title; }
+
+        // The text shown to the user, only built when asked for
+        public String getMessage() {
+            return Diagnostics.formatMessage(title, diagnostics, errorCount);
         }
     }
 
-    // Pattern to enforce "Type Name = Value" structure
-    private final Pattern declarationPattern = 
-        Pattern.compile("^(int|double|float|char|boolean|byte|short|long|String)\\s+[a-zA-Z_][a-zA-Z0-9_]*\\s*=\\s*(.+)$");
+    private int maxErrors = Diagnostics.DEFAULT_MAX_ERRORS;
+
+    public int getMaxErrors() { return maxErrors; }
+    public void setMaxErrors(int maxErrors) { this.maxErrors = Math.max(1, maxErrors); }
 
     public Result analyze(String code) {
+        // Recorded as a JFR event (see AnalysisEvents)
+        AnalysisEvents.Stage event = new AnalysisEvents.Stage();
+        event.begin();
+        Result result = check(code);
+        AnalysisEvents.commitStage(event, "Syntax", code, 0, result.errorCount, result.success);
+        return result;
+    }
+
+    private Result check(String code) {
         if (code == null || code.trim().isEmpty()) {
-            return new Result(false, "No code to analyze", new ArrayList<>());
+            return new Result(false, "No code to analyze", new SyntaxTree(new TokenBuffer("", 0), 0),
+                              new Diagnostics(maxErrors));
+        }
+
+        Diagnostics errors = new Diagnostics(maxErrors);
+        SyntaxTree tree = parseSource(code, errors);
+        return toResult(tree, errors);
+    }
+
+    // Lex and parse a whole source at once, for the standalone analyze() of this stage and the Semantic one.
+    // Lexical errors are the Lexer's business: lines that have them are parsed from whatever tokens were found.
+    static SyntaxTree parseSource(String code, Diagnostics errors) {
+        TokenBuffer tokens = new TokenBuffer(code, Math.max(16, code.length() / 8));
+        new LexicalAnalyzer().scan(code, tokens, new Diagnostics(1));
+        SyntaxTree tree = new SyntaxTree(tokens, tokens.size() / 2);
+        Parser parser = new Parser(tokens, tree, errors);
+        parser.advance(tokens.size());
+        parser.finish();
+        return tree;
+    }
+
+    Result toResult(SyntaxTree tree, Diagnostics errors) {
+        // Fail if any errors were found
+        if (!errors.isEmpty()) {
+            return new Result(false, "Syntax Analysis Failed", new SyntaxTree(tree.getTokens(), 0), errors);
         }
 
-        String[] lines = code.split("\n");
-        List<String> errors = new ArrayList<>();
+        return new Result(true, "Syntax Analysis Passed!", tree, errors);
+    }
+
+    // === THE PARSER ===
+    // Fed tokens as the Lexer produces them (CompilerPipeline calls advance() after every line).
+    // Where a statement ends is decided first, by looking at each token once; the statement is then
+    // parsed by recursive descent over exactly its own tokens, and either lands in the tree whole
+    // or not at all.
+    // A statement whose first tokens already rule out "TYPE NAME =" is known to be invalid before it
+    // ends. All its report needs is where it started, so a caller that streams (StreamingAnalyzer)
+    // may drop its tokens with dropPending() instead of holding them until the ';'.
+    static class Parser {
+        private static final int MAX_NESTING = 256;
+
+        private final TokenBuffer tokens;
+        private final SyntaxTree tree;
+        private final Diagnostics errors;
 
-        for (int lineNum = 0; lineNum < lines.length; lineNum++) {
-            String line = lines[lineNum].trim();
-            if (line.isEmpty()) continue;
+        private int statementStart = 0;   // first token of the statement not finished yet
+        private int scanned = 0;          // tokens before this one have been looked at
+        private boolean inValue = false;  // the last token looked at belongs to a value
+        private int statements = 0;
 
-            // Semicolon Check
-            // Every statement in Java must end with a semicolon.
-            if (!line.endsWith(";")) {
-                errors.add("Line " + (lineNum + 1) + ": Missing semicolon");
-                continue;
+        // The last token looked at, -1 at the start of a statement; its end once it was dropped
+        private int lastType = -1;
+        private int lastLine;
+        private int lastEndColumn;
+
+        // The pending statement cannot be a declaration, it will be reported where it started
+        private boolean invalid = false;
+        private int invalidLine;
+        private int invalidColumn;
+        private boolean dropped = false;  // and its tokens so far are gone from the buffer
+
+        // Recursive descent position within the current statement [pos, end)
+        private int pos;
+        private int end;
+        private int nesting;
+
+        Parser(TokenBuffer tokens, SyntaxTree tree, Diagnostics errors) {
+            this.tokens = tokens;
+            this.tree = tree;
+            this.errors = errors;
+        }
+
+        // Parse every statement that is complete within tokens[0, to). The last one may go on
+        // in tokens that have not been lexed yet, so it waits for the next call or for finish().
+        // Callers stop only at the end of a line, so a ';' can tell whether another one follows on its line.
+        void advance(int to) {
+            for (; scanned < to; scanned++) {
+                int i = scanned;
+                int type = tokens.type(i);
+                if (inValue && type == TokenBuffer.KEYWORD && tokens.line(i) != lastLine) {
+                    missingSemicolon(i);
+                    startStatement(i);
+                }
+                if (!invalid && !canStart(i - statementStart, type)) {
+                    invalid = true;
+                    invalidLine = tokens.line(statementStart);
+                    invalidColumn = tokens.column(statementStart);
+                }
+                if (type == TokenBuffer.SEMICOLON && !isSemicolonNext(i, to)) {
+                    if ((++statements & 1023) == 0) Cancellation.throwIfCancelled();
+                    if (invalid) errors.add(Diagnostic.Code.INVALID_DECLARATION, invalidLine, invalidColumn);
+                    else statement(statementStart, i + 1);
+                    startStatement(i + 1);
+                    continue;
+                }
+                if (type == TokenBuffer.ASSIGNMENT || type == TokenBuffer.COMMA) {
+                    inValue = false;
+                } else if (lastType == TokenBuffer.ASSIGNMENT) {
+                    inValue = true;
+                }
+                lastType = type;
+                lastLine = tokens.line(i);
             }
+        }
 
-            // Remove semicolon to check the rest of the syntax
-            String cleanLine = line.substring(0, line.length() - 1).trim();
+        // Another ';' follows token i on its line (see the class comment)
+        private boolean isSemicolonNext(int i, int to) {
+            return i + 1 < to && tokens.type(i + 1) == TokenBuffer.SEMICOLON && tokens.line(i + 1) == tokens.line(i);
+        }
+
+        // Can the token at this position of a statement still begin "TYPE NAME =" (see declaration())?
+        private static boolean canStart(int position, int type) {
+            return switch (position) {
+                case 0 -> type == TokenBuffer.KEYWORD;
+                case 1 -> type == TokenBuffer.IDENTIFIER || type == TokenBuffer.KEYWORD;
+                case 2 -> type == TokenBuffer.ASSIGNMENT;
+                default -> true;
+            };
+        }
 
-            //Structure Check
-            // Does the line follow strict "Type Name = Value" syntax?
-            if (!declarationPattern.matcher(cleanLine).matches()) {
-                errors.add("Line " + (lineNum + 1) + ": Invalid declaration syntax");
+        private void startStatement(int first) {
+            statementStart = first;
+            inValue = false;
+            lastType = -1;
+            invalid = false;
+            dropped = false;
+        }
+
+        // End of input: whatever is still open never got its semicolon
+        void finish() {
+            if (hasPendingStatement()) missingSemicolon(scanned);
+            startStatement(scanned);
+        }
+
+        boolean hasPendingStatement() { return dropped || statementStart < scanned; }
+
+        // The pending statement is known to be invalid, so its tokens are no longer needed
+        boolean isPendingInvalid() { return invalid; }
+
+        // Forget every token looked at so far, before the caller clears the buffer. Only allowed
+        // while isPendingInvalid() (or with nothing pending): what its report needs is kept here.
+        void dropPending() {
+            if (scanned > statementStart) {
+                int last = scanned - 1;
+                lastEndColumn = tokens.column(last) + tokens.end(last) - tokens.start(last);
             }
+            dropped = hasPendingStatement();
+            statementStart = 0;
+            scanned = 0;
         }
 
-        // Fail if any errors were found
-        if (!errors.isEmpty()) {
-            return new Result(false, "Syntax Analysis Failed\n\n" + String.join("\n", errors), errors);
+        // Start over after the caller cleared the token buffer (nothing may be pending)
+        void reset() {
+            scanned = 0;
+            startStatement(0);
+        }
+
+        // The pending statement ends before token next without its ';': reported just after its last token
+        private void missingSemicolon(int next) {
+            if (next > statementStart) {
+                int last = next - 1;
+                errors.add(Diagnostic.Code.MISSING_SEMICOLON, tokens.line(last),
+                           tokens.column(last) + tokens.end(last) - tokens.start(last));
+            } else {
+                errors.add(Diagnostic.Code.MISSING_SEMICOLON, lastLine, lastEndColumn);
+            }
+        }
+
+        private void statement(int from, int to) {
+            pos = from;
+            end = to;
+            nesting = 0;
+            int nodes = tree.size();
+            if (!declaration()) {
+                tree.truncate(nodes);
+                errors.add(Diagnostic.Code.INVALID_DECLARATION, tokens.line(from), tokens.column(from));
+            }
+        }
+
+        // declaration := TYPE declarator (',' declarator)* ';'
+        private boolean declaration() {
+            int type = pos;
+            if (!accept(TokenBuffer.KEYWORD)) return false;
+            int node = tree.add(SyntaxTree.DECLARATION, type, type, end);
+
+            int previous = -1;
+            do {
+                int declarator = declarator();
+                if (declarator < 0) return false;
+                if (previous < 0) tree.setFirstChild(node, declarator);
+                else tree.setNextSibling(previous, declarator);
+                previous = declarator;
+            } while (accept(TokenBuffer.COMMA));
+
+            if (!accept(TokenBuffer.SEMICOLON)) return false;
+            tree.addStatement(node);
+            return true;
+        }
+
+        // declarator := NAME '=' value
+        private int declarator() {
+            int name = pos;
+            if (!accept(TokenBuffer.IDENTIFIER) && !accept(TokenBuffer.KEYWORD)) return -1;
+            if (!accept(TokenBuffer.ASSIGNMENT)) return -1;
+            int node = tree.add(SyntaxTree.DECLARATOR, name, name, -1);
+
+            int value = value();
+            if (value < 0) return -1;
+            tree.setFirstChild(node, value);
+            tree.setEnd(node, pos);
+            return node;
+        }
+
+        // value := expression | malformed
+        // The expression only if it takes every token up to where the value ends (see the class
+        // comment); otherwise those tokens as one MALFORMED node, left for the Semantic stage to reject.
+        private int value() {
+            int start = pos;
+            int valueEnd = valueEnd(start);
+            if (valueEnd == start) return -1;
+
+            int nodes = tree.size();
+            int statementEnd = end;
+            end = valueEnd;
+            int expression = expression();
+            end = statementEnd;
+            if (expression >= 0 && pos == valueEnd) return expression;
+
+            tree.truncate(nodes);
+            nesting = 0;
+            pos = valueEnd;
+            return tree.add(SyntaxTree.MALFORMED, start, start, valueEnd);
         }
 
-        return new Result(true, "Syntax Analysis Passed!", new ArrayList<>());
+        // The value starting at token start ends before the statement's last token (its ';'), or
+        // before a ',' followed by NAME '=' if one comes first. Never before its second token.
+        private int valueEnd(int start) {
+            int last = end - 1;
+            for (int i = start + 1; i + 2 < last; i++) {
+                if (tokens.type(i) != TokenBuffer.COMMA || tokens.type(i + 2) != TokenBuffer.ASSIGNMENT) continue;
+                int name = tokens.type(i + 1);
+                if (name == TokenBuffer.IDENTIFIER || name == TokenBuffer.KEYWORD) return i;
+            }
+            return last;
+        }
+
+        // expression := term (('+' | '-') term)*
+        private int expression() {
+            int left = term();
+            while (left >= 0 && (at('+') || at('-'))) {
+                int operator = pos++;
+                int right = term();
+                if (right < 0) return -1;
+                left = binary(operator, left, right);
+            }
+            return left;
+        }
+
+        // term := unary (('*' | '/' | '%') unary)*
+        private int term() {
+            int left = unary();
+            while (left >= 0 && (at('*') || at('/') || at('%'))) {
+                int operator = pos++;
+                int right = unary();
+                if (right < 0) return -1;
+                left = binary(operator, left, right);
+            }
+            return left;
+        }
+
+        // unary := ('+' | '-') unary | primary
+        private int unary() {
+            if (!at('+') && !at('-')) return primary();
+            if (++nesting > MAX_NESTING) return -1;
+            int operator = pos++;
+            int operand = unary();
+            nesting--;
+            if (operand < 0) return -1;
+            // Added after its operand, like every expression node (see SyntaxTree)
+            int node = tree.add(SyntaxTree.UNARY, operator, operator, tree.end(operand));
+            tree.setFirstChild(node, operand);
+            return node;
+        }
+
+        // primary := NUMBER | STRING | CHAR | 'true' | 'false' | NAME | '(' expression ')'
+        private int primary() {
+            if (pos >= end) return -1;
+            int token = pos;
+            switch (tokens.type(token)) {
+                case TokenBuffer.NUMBER, TokenBuffer.STRING, TokenBuffer.CHAR -> {
+                    pos++;
+                    return tree.add(SyntaxTree.LITERAL, token, token, token + 1);
+                }
+                case TokenBuffer.IDENTIFIER, TokenBuffer.KEYWORD -> {
+                    pos++;
+                    byte kind = isBooleanLiteral(token) ? SyntaxTree.LITERAL : SyntaxTree.NAME;
+                    return tree.add(kind, token, token, token + 1);
+                }
+                default -> {
+                    if (!at('(') || ++nesting > MAX_NESTING) return -1;
+                    pos++;
+                    int inner = expression();
+                    nesting--;
+                    if (inner < 0 || !at(')')) return -1;
+                    pos++;
+                    // No node of its own: the expression inside just takes the parentheses into its range
+                    tree.setStart(inner, token);
+                    tree.setEnd(inner, pos);
+                    return inner;
+                }
+            }
+        }
+
+        private int binary(int operator, int left, int right) {
+            int node = tree.add(SyntaxTree.BINARY, operator, tree.start(left), tree.end(right));
+            tree.setFirstChild(node, left);
+            tree.setNextSibling(left, right);
+            return node;
+        }
+
+        // The current token is the operator or parenthesis c
+        private boolean at(char c) {
+            if (pos >= end) return false;
+            int type = tokens.type(pos);
+            return (type == TokenBuffer.OPERATOR || type == TokenBuffer.PARENTHESIS)
+                    && tokens.getSource().charAt(tokens.start(pos)) == c;
+        }
+
+        private boolean isBooleanLiteral(int token) {
+            int length = tokens.end(token) - tokens.start(token);
+            if (length != 4 && length != 5) return false;
+            CharSequence text = tokens.getSource();
+            String word = length == 4 ? "true" : "false";
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(tokens.start(token) + i) != word.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        private boolean accept(int type) {
+            if (pos < end && tokens.type(pos) == type) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,266 @@
+package com.tam.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Bounds;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+
+/*
+ * Token colors for the code editor, painted over the TextArea on a Canvas.
+ *
+ * A TextArea can only draw all of its text in one color, so the code area's own glyphs are made
+ * transparent (it still does the scrolling, the selection highlight and the measuring) and this
+ * layer paints the visible lines again, token by token, in the same monospaced font.
+ *
+ * Only what is on screen is ever lexed or drawn: the few dozen visible lines are taken straight
+ * from the TextArea's paragraphs and their tokens come from the same LexicalAnalyzer.scanLine()
+ * the pipeline uses. Token spans are cached by line content, so after an edit only the edited
+ * lines are lexed again; scrolling over lines seen before costs a lookup per line.
+ * Lexical errors (unknown or invalid tokens) are drawn in red.
+ *
+ * Positions follow the code area's scrollTop/scrollLeft like LineNumberGutter does, with
+ * columns measured in the font's character width (tabs expand to the next multiple of 8).
+ */
+public final class SyntaxHighlighter extends Region {
+
+    private static final int TAB_SIZE = 8;
+    private static final int MAX_CACHED_LINES = 8192;
+
+    // Colors per TokenBuffer type, then plain text and errors
+    private static final Color[] TOKEN_COLORS = {
+        Color.web("#c084fc"),   // KEYWORD
+        Color.web("#e2e8f0"),   // IDENTIFIER
+        Color.web("#fbbf24"),   // NUMBER
+        Color.web("#34d399"),   // STRING
+        Color.web("#2dd4bf"),   // CHAR
+        Color.web("#94a3b8"),   // ASSIGNMENT
+        Color.web("#94a3b8"),   // SEMICOLON
+        Color.web("#94a3b8"),   // COMMA
+        Color.web("#f472b6"),   // OPERATOR
+        Color.web("#94a3b8"),   // PARENTHESIS
+    };
+    private static final Color PLAIN_COLOR = Color.web("#e2e8f0");
+    private static final Color ERROR_COLOR = Color.web("#f87171");
+    private static final int ERROR = -1;
+
+    // The colored parts of one line: start, end and color index (a TokenBuffer type or ERROR), sorted
+    private static final class LineStyle {
+        final int[] spans;
+
+        LineStyle(int[] spans) {
+            this.spans = spans;
+        }
+    }
+
+    private final TextArea codeArea;
+    private final LexicalAnalyzer lexicalAnalyzer = new LexicalAnalyzer();
+    private final Canvas canvas = new Canvas();
+    private final Rectangle clip = new Rectangle();
+    private final Map<String, LineStyle> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LineStyle> eldest) {
+            return size() > MAX_CACHED_LINES;
+        }
+    };
+
+    // Measured from the code area's font, reset whenever that font changes
+    private double lineHeight = -1;
+    private double charWidth;
+
+    public SyntaxHighlighter(TextArea codeArea) {
+        this.codeArea = codeArea;
+        // Sized to this region in layoutChildren(), so it must not feed back into our preferred size
+        canvas.setManaged(false);
+        canvas.setClip(clip);
+        getChildren().add(canvas);
+        setMouseTransparent(true);
+        setFocusTraversable(false);
+
+        codeArea.scrollTopProperty().addListener((obs, old, val) -> draw());
+        codeArea.scrollLeftProperty().addListener((obs, old, val) -> draw());
+        codeArea.getParagraphs().addListener((ListChangeListener<CharSequence>) change -> draw());
+        codeArea.fontProperty().addListener((obs, old, val) -> {
+            lineHeight = -1;
+            draw();
+        });
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        draw();
+    }
+
+    // ==================== Drawing ====================
+    private void draw() {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, width, height);
+        if (width <= 0 || height <= 0) return;
+        measure();
+        updateClip();
+
+        // Where the first character of line 1 would be, in our coordinates
+        double top = contentTop() - codeArea.getScrollTop();
+        double left = contentLeft() - codeArea.getScrollLeft();
+
+        List<CharSequence> paragraphs = codeArea.getParagraphs();
+        int first = Math.max(0, (int) Math.floor(-top / lineHeight));
+        int last = Math.min(paragraphs.size(), (int) Math.ceil((height - top) / lineHeight));
+
+        // Columns that can be seen at all; the rest of a long line is skipped
+        int firstColumn = Math.max(0, (int) Math.floor((clip.getX() - left) / charWidth));
+        int lastColumn = (int) Math.ceil((clip.getX() + clip.getWidth() - left) / charWidth);
+
+        g.setFont(codeArea.getFont());
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.TOP);
+        for (int i = first; i < last; i++) {
+            String line = paragraphs.get(i).toString();
+            if (line.isEmpty()) continue;
+            drawLine(g, line, style(line), left, top + i * lineHeight, firstColumn, lastColumn);
+        }
+    }
+
+    // Tokens in their colors, and whatever lies between them (spaces aside) as plain text
+    private void drawLine(GraphicsContext g, String line, LineStyle style, double left, double y,
+                          int firstColumn, int lastColumn) {
+        int[] spans = style.spans;
+        int pos = 0;
+        int column = 0;
+        for (int s = 0; s <= spans.length; s += 3) {
+            int start = s < spans.length ? spans[s] : line.length();
+            if (start > pos) {
+                column = drawRun(g, line, pos, start, PLAIN_COLOR, left, y, column, firstColumn, lastColumn);
+            }
+            if (s == spans.length || column > lastColumn) break;
+
+            Color color = spans[s + 2] == ERROR ? ERROR_COLOR : TOKEN_COLORS[spans[s + 2]];
+            column = drawRun(g, line, start, spans[s + 1], color, left, y, column, firstColumn, lastColumn);
+            pos = spans[s + 1];
+        }
+    }
+
+    // Draws line[from, to) starting at column; returns the column after it
+    private int drawRun(GraphicsContext g, String line, int from, int to, Color color, double left, double y,
+                        int column, int firstColumn, int lastColumn) {
+        int runStart = from;
+        int runColumn = column;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c == '\t' || c == ' ') {
+                // Whitespace is never drawn: flush the run before it and move on
+                flush(g, line, runStart, i, color, left + runColumn * charWidth, y, runColumn, column, firstColumn, lastColumn);
+                column = c == '\t' ? (column / TAB_SIZE + 1) * TAB_SIZE : column + 1;
+                runStart = i + 1;
+                runColumn = column;
+            } else {
+                column++;
+            }
+        }
+        flush(g, line, runStart, to, color, left + runColumn * charWidth, y, runColumn, column, firstColumn, lastColumn);
+        return column;
+    }
+
+    private void flush(GraphicsContext g, String line, int from, int to, Color color, double x, double y,
+                       int startColumn, int endColumn, int firstColumn, int lastColumn) {
+        if (from >= to || endColumn < firstColumn || startColumn > lastColumn) return;
+        g.setFill(color);
+        g.fillText(line.substring(from, to), x, y);
+    }
+
+    // ==================== Lexing ====================
+    private LineStyle style(String line) {
+        LineStyle style = cache.get(line);
+        if (style == null) {
+            style = lex(line);
+            cache.put(line, style);
+        }
+        return style;
+    }
+
+    // Tokens and lexical errors of one line, merged in position order
+    private LineStyle lex(String line) {
+        TokenBuffer tokens = new TokenBuffer(line, 8);
+        Diagnostics errors = new Diagnostics(Integer.MAX_VALUE);
+        lexicalAnalyzer.scanLine(line, 0, line.length(), 1, tokens, errors);
+
+        List<Diagnostic> errorList = errors.getCollected();
+        int[] spans = new int[(tokens.size() + errorList.size()) * 3];
+        int count = 0;
+        int t = 0;
+        int e = 0;
+        while (t < tokens.size() || e < errorList.size()) {
+            int errorStart = e < errorList.size() ? errorList.get(e).column - 1 : Integer.MAX_VALUE;
+            if (t < tokens.size() && tokens.start(t) < errorStart) {
+                spans[count++] = tokens.start(t);
+                spans[count++] = tokens.end(t);
+                spans[count++] = tokens.type(t);
+                t++;
+            } else {
+                Diagnostic error = errorList.get(e++);
+                int length = error.getArgCount() > 0 ? Math.max(1, error.getArg(0).length()) : 1;
+                spans[count++] = errorStart;
+                spans[count++] = Math.min(line.length(), errorStart + length);
+                spans[count++] = ERROR;
+            }
+        }
+        return new LineStyle(spans);
+    }
+
+    // ==================== Geometry ====================
+    private void measure() {
+        if (lineHeight > 0) return;
+        Text probe = new Text("0");
+        probe.setFont(codeArea.getFont());
+        lineHeight = Math.max(1, probe.getLayoutBounds().getHeight());
+        charWidth = Math.max(1, probe.getLayoutBounds().getWidth());
+    }
+
+    // Only paint inside the code area's viewport, never over its scroll bars or padding
+    private void updateClip() {
+        Node viewport = codeArea.lookup(".viewport");
+        if (viewport != null) {
+            Bounds bounds = sceneToLocal(viewport.localToScene(viewport.getLayoutBounds()));
+            if (bounds != null) {
+                clip.setX(bounds.getMinX());
+                clip.setY(bounds.getMinY());
+                clip.setWidth(bounds.getWidth());
+                clip.setHeight(bounds.getHeight());
+                return;
+            }
+        }
+        clip.setX(0);
+        clip.setY(0);
+        clip.setWidth(canvas.getWidth());
+        clip.setHeight(canvas.getHeight());
+    }
+
+    // Distance from the top/left of the code area to its first line of text (control + skin padding)
+    private double contentTop() {
+        double top = codeArea.getInsets().getTop();
+        Node content = codeArea.lookup(".content");
+        if (content instanceof Region region) top += region.getInsets().getTop();
+        return top;
+    }
+
+    private double contentLeft() {
+        double left = codeArea.getInsets().getLeft();
+        Node content = codeArea.lookup(".content");
+        if (content instanceof Region region) left += region.getInsets().getLeft();
+        return left;
+    }
+}
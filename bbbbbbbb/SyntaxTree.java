@@ -0,0 +1,159 @@
+package com.tam.compiler;
+
+import java.util.Arrays;
+
+/*
+ * The syntax tree SyntaxAnalyzer builds from the Lexer's tokens.
+ *
+ * Stored like TokenBuffer stores tokens: a node is an index into parallel arrays (kind,
+ * main token, token range, first child, next sibling) instead of an object, so a file with
+ * a million declarations costs a few int arrays and no per-node allocation, and walking the
+ * tree reads the arrays front to back. Token indices refer to getTokens().
+ *
+ * Node kinds:
+ *   DECLARATION  token = the type keyword, range = the whole statement including ';'
+ *                children = one DECLARATOR per declared name
+ *   DECLARATOR   token = the name, range = name to the end of its value,
+ *                child = the root of its initializer expression
+ *   LITERAL      token = a number, string, char, true or false
+ *   NAME         token = the variable referred to
+ *   UNARY        token = the + or - in front, child = the operand
+ *   BINARY       token = the operator, children = the left and the right operand
+ *   MALFORMED    token = the first token of a value that is not an expression, range = the
+ *                whole value; no children, the Semantic stage reports it as an invalid value
+ *
+ * An expression node's range covers its text exactly as written, parentheses included, so the
+ * root under a DECLARATOR spans the whole initializer. Expression nodes are stored in postorder
+ * (operands before the operator that uses them): an initializer's nodes are the index range from
+ * its leftmost leaf to its root, and can be evaluated front to back without recursion.
+ *
+ * Only statements of the form "TYPE NAME = value" are kept; the roots are listed in source order by statement().
+ */
+public class SyntaxTree {
+
+    // === NODE KINDS ===
+    public static final byte DECLARATION = 0;
+    public static final byte DECLARATOR = 1;
+    public static final byte LITERAL = 2;
+    public static final byte NAME = 3;
+    public static final byte UNARY = 4;
+    public static final byte BINARY = 5;
+    public static final byte MALFORMED = 6;
+
+    private static final String[] KIND_NAMES = { "DECLARATION", "DECLARATOR", "LITERAL", "NAME", "UNARY", "BINARY", "MALFORMED" };
+
+    private final TokenBuffer tokens;
+
+    private byte[] kinds;
+    private int[] mainTokens;
+    private int[] starts;       // first token of the node
+    private int[] ends;         // one past its last token
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int size;
+
+    private int[] statements;
+    private int statementCount;
+
+    public SyntaxTree(TokenBuffer tokens) {
+        this(tokens, 16);
+    }
+
+    public SyntaxTree(TokenBuffer tokens, int initialCapacity) {
+        this.tokens = tokens;
+        int capacity = Math.max(4, initialCapacity);
+        kinds = new byte[capacity];
+        mainTokens = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        statements = new int[Math.max(4, capacity / 4)];
+    }
+
+    // === BUILDING (used by SyntaxAnalyzer) ===
+
+    // A new node without children or siblings yet; returns its index
+    int add(byte kind, int token, int start, int end) {
+        if (size == kinds.length) resize(kinds.length * 2);
+        kinds[size] = kind;
+        mainTokens[size] = token;
+        starts[size] = start;
+        ends[size] = end;
+        firstChildren[size] = -1;
+        nextSiblings[size] = -1;
+        return size++;
+    }
+
+    void setStart(int node, int start) { starts[node] = start; }
+    void setEnd(int node, int end) { ends[node] = end; }
+    void setFirstChild(int node, int child) { firstChildren[node] = child; }
+    void setNextSibling(int node, int sibling) { nextSiblings[node] = sibling; }
+
+    // Make a finished DECLARATION visible as a statement
+    void addStatement(int node) {
+        if (statementCount == statements.length) statements = Arrays.copyOf(statements, statementCount * 2);
+        statements[statementCount++] = node;
+    }
+
+    // Drop every node from index size on (the half-built nodes of a statement that failed to parse)
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    public void clear() {
+        size = 0;
+        statementCount = 0;
+    }
+
+    // Append another tree whose tokens were appended to ours at tokenOffset (used to merge parallel chunks)
+    void addAll(SyntaxTree other, int tokenOffset) {
+        int nodeOffset = size;
+        // Grown by doubling: the incremental analyzer appends one small tree per segment
+        if (size + other.size > kinds.length) resize(Math.max(size + other.size, kinds.length * 2));
+        for (int i = 0; i < other.size; i++) {
+            kinds[size] = other.kinds[i];
+            mainTokens[size] = other.mainTokens[i] + tokenOffset;
+            starts[size] = other.starts[i] + tokenOffset;
+            ends[size] = other.ends[i] + tokenOffset;
+            firstChildren[size] = other.firstChildren[i] < 0 ? -1 : other.firstChildren[i] + nodeOffset;
+            nextSiblings[size] = other.nextSiblings[i] < 0 ? -1 : other.nextSiblings[i] + nodeOffset;
+            size++;
+        }
+        for (int i = 0; i < other.statementCount; i++) addStatement(other.statements[i] + nodeOffset);
+    }
+
+    private void resize(int capacity) {
+        kinds = Arrays.copyOf(kinds, capacity);
+        mainTokens = Arrays.copyOf(mainTokens, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    }
+
+    // === ACCESSORS ===
+    public TokenBuffer getTokens() { return tokens; }
+    public int size() { return size; }
+    public int statementCount() { return statementCount; }
+    public int statement(int index) { return statements[index]; }
+
+    public byte kind(int node) { return kinds[node]; }
+    public String kindName(int node) { return KIND_NAMES[kinds[node]]; }
+    public int token(int node) { return mainTokens[node]; }
+    public int start(int node) { return starts[node]; }
+    public int end(int node) { return ends[node]; }
+    public int firstChild(int node) { return firstChildren[node]; }   // -1 if none
+    public int nextSibling(int node) { return nextSiblings[node]; }   // -1 if none
+
+    // Start and end offset of the node's text in the source
+    public int sourceStart(int node) { return tokens.start(starts[node]); }
+    public int sourceEnd(int node) { return tokens.end(ends[node] - 1); }
+
+    // The node's text exactly as written, line breaks and all
+    public String text(int node) {
+        return tokens.getSource().subSequence(sourceStart(node), sourceEnd(node)).toString();
+    }
+
+    public static String nameOf(byte kind) { return KIND_NAMES[kind]; }
+}
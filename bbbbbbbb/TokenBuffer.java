@@ -0,0 +1,139 @@
+package com.tam.compiler;
+
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Compact token storage used by the Lexer.
+ * Instead of one Token object (plus a substring) per token we keep four parallel int arrays:
+ * the type ordinal, the start and end offset into the source, and the line number.
+ * That is 16 bytes per token and no per-token allocation while lexing.
+ */
+public class TokenBuffer {
+
+    // === TOKEN TYPE ORDINALS ===
+    public static final int KEYWORD = 0;
+    public static final int IDENTIFIER = 1;
+    public static final int NUMBER = 2;
+    public static final int STRING = 3;
+    public static final int CHAR = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int SEMICOLON = 6;
+    public static final int COMMA = 7;
+    public static final int OPERATOR = 8;       // + - * / %
+    public static final int PARENTHESIS = 9;    // ( )
+
+    private static final String[] TYPE_NAMES = {
+        "KEYWORD", "IDENTIFIER", "NUMBER", "STRING", "CHAR", "ASSIGNMENT", "SEMICOLON", "COMMA",
+        "OPERATOR", "PARENTHESIS"
+    };
+
+    private final CharSequence source;
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int size;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 16);
+    }
+
+    public TokenBuffer(CharSequence source, int initialCapacity) {
+        this.source = source;
+        this.types = new int[initialCapacity];
+        this.starts = new int[initialCapacity];
+        this.ends = new int[initialCapacity];
+        this.lines = new int[initialCapacity];
+    }
+
+    public void add(int type, int start, int end, int line) {
+        if (size == types.length) grow();
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        size++;
+    }
+
+    // Append every token of another buffer over the same source (used to merge parallel chunks)
+    public void addAll(TokenBuffer other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.ends, 0, ends, size, other.size);
+        System.arraycopy(other.lines, 0, lines, size, other.size);
+        size += other.size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > types.length) resize(capacity);
+    }
+
+    private void grow() {
+        resize(Math.max(16, types.length * 2));
+    }
+
+    private void resize(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+
+    public void clear() { size = 0; }
+
+    // Getters
+    public CharSequence getSource() { return source; }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int type(int index) { return types[index]; }
+    public String typeName(int index) { return TYPE_NAMES[types[index]]; }
+    public int start(int index) { return starts[index]; }
+    public int end(int index) { return ends[index]; }
+    public int line(int index) { return lines[index]; }
+
+    // 1-based column of a token, found by looking back for the start of its line
+    public int column(int index) {
+        int start = starts[index];
+        int lineStart = start;
+        while (lineStart > 0 && source.charAt(lineStart - 1) != '\n') lineStart--;
+        return start - lineStart + 1;
+    }
+
+    // The token text as a view into the source (no copy is made)
+    public CharSequence value(int index) {
+        return CharBuffer.wrap(source, starts[index], ends[index]);
+    }
+
+    // Compare a token against a String without building the token text
+    public boolean valueEquals(int index, String text) {
+        int start = starts[index];
+        int length = ends[index] - start;
+        if (length != text.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public static String nameOf(int type) { return TYPE_NAMES[type]; }
+
+    // Old-style view for code that still wants Token objects; they are built on demand
+    public List<LexicalAnalyzer.Token> asList() {
+        return new AbstractList<>() {
+            @Override
+            public LexicalAnalyzer.Token get(int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+                return new LexicalAnalyzer.Token(typeName(index), value(index).toString(), lines[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -9,22 +9,28 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
 import javafx.util.Duration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class UIComponents {
     private WindowController windowController;
     
     // UI Components
     private TextArea codeArea;
     private TextArea resultArea;
-    private TextArea lineNumbers;
+    private LineNumberGutter lineNumbers;
     private Label lineCountLabel;
     private Label charCountLabel;
     private Label consoleBadge;
     private Button clearBtn;
+    private Button runAllBtn;
+    private Button watchBtn;
     private VBox uploadZone;
     
     // Stage cards
     private VBox lexicalStage, syntaxStage, semanticStage;
     private Label lexicalStatus, syntaxStatus, semanticStatus;
+    private final Map<String, String> stageStatuses = new HashMap<>();
     
     private Timeline pulseAnimation;
 
@@ -148,12 +154,14 @@ public class UIComponents {
         
         uploadZone = createUploadZone();
         VBox stages = createStages();
+        runAllBtn = createRunAllButton();
+        watchBtn = createWatchButton();
         clearBtn = createClearButton();
         
         Region spacer = new Region();
         VBox.setVgrow(spacer, Priority.ALWAYS);
         
-        sidebar.getChildren().addAll(uploadZone, stages, spacer, clearBtn);
+        sidebar.getChildren().addAll(uploadZone, stages, runAllBtn, watchBtn, spacer, clearBtn);
         
         return sidebar;
     }
@@ -274,6 +282,51 @@ public class UIComponents {
                       "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.25), 8, 0, 0, 2);");
     }
 
+    private Button createRunAllButton() {
+        Button btn = new Button("Run All Stages");
+        updateRunAllButtonStyle(btn, false);
+        btn.setOnMouseEntered(e -> {
+            btn.setTranslateY(-2);
+            updateRunAllButtonStyle(btn, true);
+        });
+        btn.setOnMouseExited(e -> {
+            btn.setTranslateY(0);
+            updateRunAllButtonStyle(btn, false);
+        });
+        return btn;
+    }
+
+    private void updateRunAllButtonStyle(Button btn, boolean hover) {
+        String bgColor = hover ? "rgba(167,139,250,0.25)" : "rgba(139,92,246,0.15)";
+        String shadow = hover ? "-fx-effect: dropshadow(gaussian, rgba(139,92,246,0.5), 16, 0, 0, 0);" : 
+                               "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.25), 8, 0, 0, 2);";
+        
+        btn.setStyle("-fx-background-color: " + bgColor + "; " +
+                    "-fx-text-fill: #a78bfa; -fx-border-color: rgba(167,139,250,0.4); " +
+                    "-fx-border-width: 1.5px; -fx-background-radius: 12px; -fx-border-radius: 12px; " +
+                    "-fx-padding: 12px 18px; -fx-font-size: 13px; -fx-font-weight: 600; -fx-cursor: hand; " +
+                    shadow);
+    }
+
+    // Same look as Run All; the text says whether a folder is being watched
+    private Button createWatchButton() {
+        Button btn = new Button("Watch Folder");
+        updateRunAllButtonStyle(btn, false);
+        btn.setOnMouseEntered(e -> {
+            btn.setTranslateY(-2);
+            updateRunAllButtonStyle(btn, true);
+        });
+        btn.setOnMouseExited(e -> {
+            btn.setTranslateY(0);
+            updateRunAllButtonStyle(btn, false);
+        });
+        return btn;
+    }
+
+    public void setWatching(boolean watching) {
+        watchBtn.setText(watching ? "Stop Watching" : "Watch Folder");
+    }
+
     private Button createClearButton() {
         Button btn = new Button("Clear All");
         updateClearButtonStyle(btn, false);
@@ -389,53 +442,26 @@ public class UIComponents {
         editorContainer.setStyle("-fx-background-color: #0a0f1e; -fx-border-radius: 0 0 16px 16px; " +
                                 "-fx-background-radius: 0 0 16px 16px;");
         
-        // Line numbers area with ScrollPane
-        ScrollPane lineNumberScroll = new ScrollPane();
-        lineNumberScroll.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        lineNumberScroll.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        lineNumberScroll.setFitToHeight(true);
-        lineNumberScroll.setPrefWidth(50);
-        lineNumberScroll.setMinWidth(50);
-        lineNumberScroll.setMaxWidth(50);
-        lineNumberScroll.setStyle("-fx-background: rgba(15,23,42,0.5); -fx-background-color: rgba(15,23,42,0.5); " +
-                                 "-fx-border-color: rgba(51,65,85,0.6); -fx-border-width: 0 1 0 0;");
-        
-        lineNumbers = new TextArea("1");
-        lineNumbers.setStyle("-fx-font-family: 'JetBrains Mono', 'Fira Code', 'Consolas', monospace; " +
-                            "-fx-font-size: 12px; -fx-control-inner-background: transparent; " +
-                            "-fx-text-fill: #475569; -fx-background-color: transparent; " +
-                            "-fx-text-alignment: right; -fx-padding: 12 8 12 8; -fx-font-weight: 500;");
-        lineNumbers.setEditable(false);
-        lineNumbers.setFocusTraversable(false);
-        
-        lineNumberScroll.setContent(lineNumbers);
-        
-        // Code area with ScrollPane
-        ScrollPane codeScrollPane = new ScrollPane();
-        codeScrollPane.setFitToWidth(true);
-        codeScrollPane.setFitToHeight(true);
-        codeScrollPane.setStyle("-fx-background: #0a0f1e; -fx-background-color: #0a0f1e;");
-        
         codeArea = new TextArea();
-        codeArea.setWrapText(true);
+        // No wrapping: one row per source line, so the gutter can place numbers by line index
+        codeArea.setWrapText(false);
         codeArea.setPromptText("// Load a Java file to view code...");
         codeArea.setStyle("-fx-font-family: 'JetBrains Mono', 'Fira Code', 'Consolas', monospace; " +
                          "-fx-font-size: 13px; -fx-control-inner-background: #0a0f1e; " +
-                         "-fx-text-fill: #e2e8f0; -fx-background-color: #0a0f1e; " +
+                         "-fx-text-fill: transparent; -fx-background-color: #0a0f1e; " +
                          "-fx-padding: 12 16 12 16; -fx-prompt-text-fill: #334155; " +
-                         "-fx-highlight-fill: rgba(139,92,246,0.3); -fx-highlight-text-fill: #e2e8f0;");
+                         "-fx-highlight-fill: rgba(139,92,246,0.3); -fx-highlight-text-fill: transparent;");
         codeArea.setEditable(false);
+
+        // Line numbers: only the visible ones are drawn, following codeArea's own scroll position
+        lineNumbers = new LineNumberGutter(codeArea);
         codeArea.textProperty().addListener((obs, old, val) -> updateLineNumbers());
         
-        codeScrollPane.setContent(codeArea);
-        
-        // Sync scrolling between line numbers and code area
-        codeScrollPane.vvalueProperty().addListener((obs, old, val) -> {
-            lineNumberScroll.setVvalue(val.doubleValue());
-        });
-        
-        HBox.setHgrow(codeScrollPane, Priority.ALWAYS);
-        editorContainer.getChildren().addAll(lineNumberScroll, codeScrollPane);
+        // The code area's own text is transparent; the highlighter paints it again in token colors
+        StackPane codeStack = new StackPane(codeArea, new SyntaxHighlighter(codeArea));
+
+        HBox.setHgrow(codeStack, Priority.ALWAYS);
+        editorContainer.getChildren().addAll(lineNumbers, codeStack);
         
         panel.getChildren().addAll(header, editorContainer);
         VBox.setVgrow(editorContainer, Priority.ALWAYS);
@@ -444,25 +470,23 @@ public class UIComponents {
     }
 
     // ==================== Helper Methods ====================
+    // Line and character counts come from the gutter's running count and the content length, no re-scan
     public void updateLineNumbers() {
-        String code = codeArea.getText();
-        String[] lines = code.split("\n", -1);
-        int lineCount = lines.length;
-        int charCount = code.length();
+        AnalysisEvents.UiUpdate event = new AnalysisEvents.UiUpdate();
+        event.begin();
+        int lineCount = lineNumbers.getLineCount();
+        int charCount = codeArea.getLength();
         
         lineCountLabel.setText(lineCount + " line" + (lineCount != 1 ? "s" : ""));
         charCountLabel.setText(charCount + " char" + (charCount != 1 ? "s" : ""));
-        
-        StringBuilder numbers = new StringBuilder();
-        for (int i = 1; i <= lineCount; i++) {
-            numbers.append(i);
-            if (i < lineCount) numbers.append("\n");
-        }
-        lineNumbers.setText(numbers.toString());
+        AnalysisEvents.commitUiUpdate(event, "updateLineNumbers", charCount, lineCount);
     }
 
     public void setResultText(String text, boolean isError) {
+        AnalysisEvents.UiUpdate event = new AnalysisEvents.UiUpdate();
+        event.begin();
         resultArea.setText(text);
+        AnalysisEvents.commitUiUpdate(event, "setResultText", text);
         javafx.application.Platform.runLater(() -> resultArea.setScrollTop(0));
         
         String badgeType = isError ? "error" :
@@ -526,6 +550,7 @@ public class UIComponents {
         };
 
         if (stageEl == null || statusEl == null) return;
+        stageStatuses.put(stage, status);
 
         String baseStyle = "-fx-background-radius: 14px; -fx-border-radius: 14px; -fx-cursor: hand; -fx-border-width: 1.5px;";
         
@@ -556,6 +581,13 @@ public class UIComponents {
         }
     }
 
+    // Cards still "running" whose analysis failed or was replaced by a newer one get the given status
+    public void finishRunningStages(String status) {
+        for (String stage : new String[] {"lexical", "syntax", "semantic"}) {
+            if ("running".equals(stageStatuses.get(stage))) setStageStatus(stage, status);
+        }
+    }
+
     /*
      * HELPER METHOD: updateStageState
      * Updates the visual and interactive state of a specific analysis stage
@@ -633,7 +665,13 @@ public class UIComponents {
                 hasError && !appState.isSemanticPassed() && appState.isSyntaxPassed()
         );
 
-        // 3. Clear Button
+        // 3. Run All Button
+        // Runs all three stages at once; available until a stage fails or everything has passed
+        boolean canRunAll = fileLoaded && !hasError && !appState.isSemanticPassed();
+        runAllBtn.setDisable(!canRunAll);
+        runAllBtn.setOpacity(canRunAll ? 1.0 : 0.6);
+
+        // 4. Clear Button
         // Always enabled if file is loaded
         clearBtn.setDisable(!fileLoaded);
         clearBtn.setOpacity(fileLoaded ? 1.0 : 0.6);
@@ -646,5 +684,7 @@ public class UIComponents {
     public VBox getSyntaxStage() { return syntaxStage; }
     public VBox getSemanticStage() { return semanticStage; }
     public Button getClearButton() { return clearBtn; }
+    public Button getRunAllButton() { return runAllBtn; }
+    public Button getWatchButton() { return watchBtn; }
 
 }
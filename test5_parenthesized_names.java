@@ -0,0 +1,4 @@
+int width = 8;
+int height = (width) * 2;
+long area = ((width)) * (height);
+double half = -(area) / 2.0;
\ No newline at end of file